@@ -0,0 +1,77 @@
+// What a farmer or buyer is currently doing.
+// Agents report an activity code plus a field and up to two numbers, which WorldState packs
+// into a single long per agent. The familiar text (e.g. "Waiting for cows (3/50)") is only
+// built when the GUI or the world-state log actually renders it.
+public enum Activity {
+    NONE(""),
+    // Farmer activities
+    ON_BREAK("On break for %a ticks"),
+    ON_BREAK_REMAINING("On break for %a more ticks"),
+    RETURNING_FROM_BREAK("Returning from break"),
+    WAITING_AT_ENCLOSURE("Waiting at enclosure"),
+    MOVING_TO_FIELD("Moving to %f with %a animals"),
+    STOCKING("Stocking %f with %a animals"),
+    FINISHED_STOCKING("Finished stocking %f"),
+    RETURNING_TO_ENCLOSURE("Returning to enclosure"),
+    // Buyer activities
+    WAITING_BEING_STOCKED("Waiting - %f is being stocked (%a/%b)"),
+    WAITING_FOR_FIELD("Waiting for %f (%a/%b)"),
+    BOUGHT("Bought a %f animal");
+
+    public static final int NO_FIELD = 0xFFFF;
+
+    // Packed layout: code (8 bits) | field id (16 bits) | a (20 bits) | b (20 bits)
+    private static final int VALUE_BITS = 20;
+    private static final long VALUE_MASK = (1L << VALUE_BITS) - 1;
+    public static final int MAX_VALUE = (int) VALUE_MASK; // Largest a or b that packs unchanged
+    private static final Activity[] CODES = values();
+
+    private final String template;
+
+    Activity(String template) {
+        this.template = template;
+    }
+
+    public static long pack(Activity activity, int fieldId, int a, int b) {
+        return ((long) activity.ordinal() << 56)
+                | ((long) (fieldId & 0xFFFF) << 40)
+                | ((a & VALUE_MASK) << VALUE_BITS)
+                | (b & VALUE_MASK);
+    }
+
+    public static Activity activityOf(long packed) {
+        return CODES[(int) (packed >>> 56)];
+    }
+
+    public static int fieldIdOf(long packed) {
+        return (int) ((packed >>> 40) & 0xFFFF);
+    }
+
+    public static int firstValueOf(long packed) {
+        return (int) ((packed >>> VALUE_BITS) & VALUE_MASK);
+    }
+
+    public static int secondValueOf(long packed) {
+        return (int) (packed & VALUE_MASK);
+    }
+
+    // Builds the display text, e.g. "Moving to cows with 4 animals"
+    public String render(String fieldName, int a, int b) {
+        StringBuilder sb = new StringBuilder(template.length() + 16);
+        for (int i = 0; i < template.length(); i++) {
+            char c = template.charAt(i);
+            if (c == '%' && i + 1 < template.length()) {
+                char key = template.charAt(++i);
+                switch (key) {
+                    case 'f' -> sb.append(fieldName);
+                    case 'a' -> sb.append(a);
+                    case 'b' -> sb.append(b);
+                    default -> sb.append(c).append(key);
+                }
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+}
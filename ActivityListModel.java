@@ -0,0 +1,51 @@
+import java.util.function.IntFunction;
+
+import javax.swing.AbstractListModel;
+
+// List model over an ActivityTable, used by the GUI's farmer and buyer lists.
+// Rows are rendered from the packed activity codes only when the JList paints them, so only
+// the visible rows cost anything, however many agents there are. All methods run on the EDT.
+final class ActivityListModel extends AbstractListModel<String> {
+    private static final long serialVersionUID = 1L;
+
+    private final transient ActivityTable table;
+    private final transient IntFunction<String> fieldNames;
+    private int size = 0; // Rows the JList knows about; catches up with the table in refresh()
+
+    ActivityListModel(ActivityTable table, IntFunction<String> fieldNames) {
+        this.table = table;
+        this.fieldNames = fieldNames;
+    }
+
+    // Announce newly registered agents, then let the list repaint the rows it is showing
+    void refresh() {
+        int known = size;
+        int current = table.size();
+        if (current > known) {
+            size = current;
+            fireIntervalAdded(this, known, current - 1);
+        }
+        if (known > 0) {
+            fireContentsChanged(this, 0, known - 1);
+        }
+    }
+
+    @Override
+    public int getSize() {
+        return size;
+    }
+
+    @Override
+    public String getElementAt(int index) {
+        long packed = table.get(index);
+        int fieldId = Activity.fieldIdOf(packed);
+        String fieldName = (fieldId == Activity.NO_FIELD) ? "" : fieldNames.apply(fieldId);
+        return table.name(index) + ": " + Activity.activityOf(packed).render(fieldName,
+                Activity.firstValueOf(packed), Activity.secondValueOf(packed));
+    }
+
+    // Used by the cell renderer to colour a row by what the agent is doing
+    Activity activityAt(int index) {
+        return Activity.activityOf(table.get(index));
+    }
+}
@@ -0,0 +1,98 @@
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.IntFunction;
+
+// Current activity of every farmer (or every buyer), one packed long per agent (see Activity).
+// Storage is split into fixed-size chunks that never move once allocated, so registering a new
+// agent never copies or invalidates the slots other agents are writing to. Each agent only
+// writes its own slot; readers (GUI, logger) see each slot atomically.
+final class ActivityTable {
+    private static final int CHUNK_BITS = 10;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private volatile AtomicLongArray[] activityChunks = new AtomicLongArray[0];
+    private volatile String[][] nameChunks = new String[0][];
+    private volatile int size = 0; // Written last on register, so readers only see complete slots
+
+    // Adds an agent and returns its index
+    synchronized int register(String name) {
+        int index = size;
+        int chunk = index >>> CHUNK_BITS;
+        if (chunk == activityChunks.length) {
+            AtomicLongArray[] activities = Arrays.copyOf(activityChunks, chunk + 1);
+            activities[chunk] = new AtomicLongArray(CHUNK_SIZE);
+            String[][] names = Arrays.copyOf(nameChunks, chunk + 1);
+            names[chunk] = new String[CHUNK_SIZE];
+            activityChunks = activities;
+            nameChunks = names;
+        }
+        nameChunks[chunk][index & CHUNK_MASK] = name;
+        size = index + 1;
+        return index;
+    }
+
+    void set(int index, long packedActivity) {
+        activityChunks[index >>> CHUNK_BITS].set(index & CHUNK_MASK, packedActivity);
+    }
+
+    long get(int index) {
+        return activityChunks[index >>> CHUNK_BITS].get(index & CHUNK_MASK);
+    }
+
+    String name(int index) {
+        return nameChunks[index >>> CHUNK_BITS][index & CHUNK_MASK];
+    }
+
+    int size() {
+        return size;
+    }
+
+    // Copies every agent's current code; each slot is read atomically
+    long[] codes() {
+        int count = size;
+        long[] codes = new long[count];
+        for (int i = 0; i < count; i++) {
+            codes[i] = get(i);
+        }
+        return codes;
+    }
+
+    // Renders every agent that has reported an activity, in registration order
+    Map<String, String> render(IntFunction<String> fieldNames) {
+        return new Snapshot(this, codes()).render(fieldNames);
+    }
+
+    // Activity codes copied at one moment, with the table kept only to look up agent names
+    // (which never change once registered)
+    record Snapshot(ActivityTable table, long[] codes) {
+        int size() {
+            return codes.length;
+        }
+
+        long get(int index) {
+            return codes[index];
+        }
+
+        String name(int index) {
+            return table.name(index);
+        }
+
+        Map<String, String> render(IntFunction<String> fieldNames) {
+            Map<String, String> rendered = new LinkedHashMap<>();
+            for (int i = 0; i < codes.length; i++) {
+                long packed = codes[i];
+                Activity activity = Activity.activityOf(packed);
+                if (activity != Activity.NONE) {
+                    int fieldId = Activity.fieldIdOf(packed);
+                    String fieldName = (fieldId == Activity.NO_FIELD) ? "" : fieldNames.apply(fieldId);
+                    rendered.put(table.name(i), activity.render(fieldName,
+                            Activity.firstValueOf(packed), Activity.secondValueOf(packed)));
+                }
+            }
+            return rendered;
+        }
+    }
+}
@@ -0,0 +1,28 @@
+// Decides what kind of thread the simulation agents (Farmer, Buyer, DeliveryManager) run on.
+// Platform threads are the default; virtual threads let a single JVM host tens of thousands
+// of agents, since an agent parked in TickManager only costs a small heap-allocated stack.
+public final class AgentRuntime {
+    public enum Kind {
+        PLATFORM,
+        VIRTUAL
+    }
+
+    private static volatile Kind kind = Kind.PLATFORM;
+
+    private AgentRuntime() {
+    }
+
+    public static void setKind(Kind newKind) {
+        kind = newKind;
+    }
+
+    public static Kind getKind() {
+        return kind;
+    }
+
+    // Starts the agent on a new thread of the configured kind
+    public static Thread start(String name, Runnable agent) {
+        Thread.Builder builder = (kind == Kind.VIRTUAL) ? Thread.ofVirtual() : Thread.ofPlatform();
+        return builder.name(name).start(agent);
+    }
+}
@@ -0,0 +1,148 @@
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+// Scaling benchmark for the agent runtime.
+// Runs the farm in virtual time with an increasing number of buyers, once on platform threads,
+// once on virtual threads and once as state machines on the single-threaded EventLoopEngine,
+// and reports live thread count, memory, run time and agent-ticks per second per size.
+// Every run gets its own WorldState, and event logging is switched off, so the numbers measure
+// the engines rather than the log writer.
+//
+// Usage: java AgentScalingBenchmark [ticks] [agentCount...]
+//   e.g. java AgentScalingBenchmark 100 100 1000 10000
+class AgentScalingBenchmark {
+    private static final int DEFAULT_TICKS = 100;
+    private static final int[] DEFAULT_AGENT_COUNTS = {100, 1000, 10000};
+
+    public static void main(String[] args) throws InterruptedException {
+        int ticks = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_TICKS;
+        int[] agentCounts = DEFAULT_AGENT_COUNTS;
+        if (args.length > 1) {
+            agentCounts = new int[args.length - 1];
+            for (int i = 1; i < args.length; i++) {
+                agentCounts[i - 1] = Integer.parseInt(args[i]);
+            }
+        }
+
+        // The simulation's own event output would dominate the measurement, so discard it
+        PrintStream report = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+
+        FarmLogger.setEnabled(false);
+
+        report.printf("%-9s %8s %8s %10s %12s %12s %10s %16s%n",
+                "runtime", "agents", "ticks", "threads", "heap_MB", "rss_MB", "millis", "agent_ticks/s");
+        for (AgentRuntime.Kind kind : AgentRuntime.Kind.values()) {
+            for (int agents : agentCounts) {
+                report.println(runOnce(kind, agents, ticks));
+            }
+        }
+        for (int agents : agentCounts) {
+            report.println(runEventLoop(agents, ticks));
+        }
+    }
+
+    private static String runOnce(AgentRuntime.Kind kind, int buyers, int ticks) throws InterruptedException {
+        AgentRuntime.setKind(kind);
+        ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+
+        Farm farm = newFarm();
+        TickManager tickManager = new TickManager(farm.getConfig().getTickSize(), TickManager.Mode.VIRTUAL,
+                farm.getWorldState());
+        FarmLogger.setTickManager(tickManager);
+
+        List<Thread> threads = new ArrayList<>();
+        threads.add(new DeliveryManager(farm, tickManager).start());
+        for (int i = 0; i < farm.getConfig().getNumberOfFarmers(); i++) {
+            threads.add(new Farmer(farm, String.valueOf(i + 1), tickManager).start());
+        }
+        for (int i = 0; i < buyers; i++) {
+            threads.add(new Buyer(String.valueOf(i + 1), farm, tickManager).start());
+        }
+        int agents = threads.size();
+
+        long startNanos = System.nanoTime();
+        tickManager.start();
+        tickManager.awaitTick(ticks / 2);
+
+        // Sample half way through, while every agent is alive
+        int liveThreads = threadBean.getThreadCount();
+        System.gc();
+        long heapBytes = Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory();
+        long rssBytes = residentSetBytes();
+
+        tickManager.awaitTick(ticks);
+        long nanos = System.nanoTime() - startNanos;
+        tickManager.stopTicks();
+        for (Thread thread : threads) {
+            thread.join(1000);
+        }
+
+        return format(kind.toString(), agents, ticks, liveThreads, heapBytes, rssBytes, nanos);
+    }
+
+    // The same farm stepped by one thread
+    private static String runEventLoop(int buyers, int ticks) {
+        ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+
+        Farm farm = newFarm();
+        TickManager tickManager = new TickManager(farm.getConfig().getTickSize(), TickManager.Mode.VIRTUAL,
+                farm.getWorldState());
+        FarmLogger.setTickManager(tickManager);
+        EventLoopEngine engine = new EventLoopEngine(farm, tickManager);
+        engine.addDeliveryManager();
+        for (int i = 0; i < farm.getConfig().getNumberOfFarmers(); i++) {
+            engine.addFarmer(String.valueOf(i + 1));
+        }
+        for (int i = 0; i < buyers; i++) {
+            engine.addBuyer(String.valueOf(i + 1));
+        }
+
+        long startNanos = System.nanoTime();
+        engine.runUntil(ticks / 2);
+        long pausedNanos = System.nanoTime();
+        int liveThreads = threadBean.getThreadCount();
+        System.gc();
+        long heapBytes = Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory();
+        long rssBytes = residentSetBytes();
+        long resumedNanos = System.nanoTime();
+        engine.runUntil(ticks);
+        long nanos = (pausedNanos - startNanos) + (System.nanoTime() - resumedNanos); // Without the sampling
+        tickManager.stopTicks();
+
+        return format("EVENTLOOP", engine.getAgentCount(), ticks, liveThreads, heapBytes, rssBytes, nanos);
+    }
+
+    private static Farm newFarm() {
+        Farm farm = new Farm(new WorldState(), SimulationConfig.defaults(), 1);
+        farm.addField();
+        return farm;
+    }
+
+    private static String format(String runtime, int agents, int ticks, int liveThreads, long heapBytes,
+                                 long rssBytes, long nanos) {
+        return String.format("%-9s %8d %8d %10d %12.1f %12.1f %10d %16.0f",
+                runtime, agents, ticks, liveThreads, heapBytes / 1048576.0, rssBytes / 1048576.0,
+                nanos / 1_000_000, (double) agents * ticks / (nanos / 1e9));
+    }
+
+    // Resident set size of this process on Linux, -1 elsewhere
+    private static long residentSetBytes() {
+        try {
+            for (String line : Files.readAllLines(Paths.get("/proc/self/status"))) {
+                if (line.startsWith("VmRSS:")) {
+                    return Long.parseLong(line.replaceAll("[^0-9]", "")) * 1024;
+                }
+            }
+        } catch (Exception e) {
+            // Not available on this platform
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,53 @@
+import java.util.Arrays;
+import java.util.Comparator;
+
+// The kinds of animal the farm handles, one field per type.
+// Animals are never passed around individually: a delivery, the enclosure and a farmer's load
+// are all int[] count vectors indexed by ordinal(), so moving a batch costs O(types) rather
+// than O(animals).
+public enum AnimalType {
+    PIGS("pigs"),
+    COWS("cows"),
+    SHEEP("sheep"),
+    LLAMAS("llamas"),
+    CHICKENS("chickens");
+
+    public static final int COUNT = values().length;
+    private static final AnimalType[] VALUES = values();
+    // Alphabetical by name, the order used when printing deliveries
+    private static final AnimalType[] BY_NAME = Arrays.stream(VALUES)
+            .sorted(Comparator.comparing(AnimalType::getName))
+            .toArray(AnimalType[]::new);
+
+    private final String name;
+
+    AnimalType(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public static AnimalType of(int ordinal) {
+        return VALUES[ordinal];
+    }
+
+    public static AnimalType[] inNameOrder() {
+        return BY_NAME.clone();
+    }
+
+    // An empty count vector
+    public static int[] newCounts() {
+        return new int[COUNT];
+    }
+
+    // Total number of animals in a count vector
+    public static int total(int[] counts) {
+        int total = 0;
+        for (int count : counts) {
+            total += count;
+        }
+        return total;
+    }
+}
@@ -0,0 +1,143 @@
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+// Background writer for FarmLogger's event lines.
+// Producers (farmers, buyers, ...) only format their line and put it in a LogRingBuffer; one
+// daemon thread drains the buffer in batches and writes each batch to stdout or a file with a
+// single call, so no agent ever waits on terminal I/O or on another agent's log call.
+final class AsyncLogWriter {
+    // What a producer does when the ring buffer is full
+    enum Backpressure {
+        BLOCK,  // Wait for the writer to make room (no lines lost)
+        DROP,   // Discard the line and count it
+        SAMPLE  // Keep one in every sampleRate overflowing lines, discard the rest
+    }
+
+    private static final int BATCH_SIZE = 512;
+    private static final long IDLE_PARK_NANOS = 1_000_000; // Writer poll interval when idle
+
+    private final LogRingBuffer buffer;
+    private final Backpressure backpressure;
+    private final int sampleRate;
+    private final Writer fileWriter; // null means stdout
+    private final Thread writerThread;
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong overflowed = new AtomicLong();
+    private volatile long written = 0; // Lines drained and written out, only advanced by the writer
+    private volatile boolean writerIdle = false;
+    private volatile boolean closed = false;
+
+    AsyncLogWriter(int capacity, Backpressure backpressure, int sampleRate, String filePath) throws IOException {
+        this.buffer = new LogRingBuffer(capacity);
+        this.backpressure = backpressure;
+        this.sampleRate = Math.max(1, sampleRate);
+        this.fileWriter = (filePath == null) ? null : new BufferedWriter(new FileWriter(filePath, false));
+        this.writerThread = new Thread(this::drainLoop, "farm-log-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    // Queue one preformatted line, applying the backpressure policy if the buffer is full
+    void submit(String line) {
+        if (!buffer.offer(line)) {
+            switch (backpressure) {
+                case BLOCK -> offerBlocking(line);
+                case DROP -> dropped.incrementAndGet();
+                case SAMPLE -> {
+                    if (overflowed.getAndIncrement() % sampleRate == 0) {
+                        offerBlocking(line);
+                    } else {
+                        dropped.incrementAndGet();
+                    }
+                }
+            }
+        }
+        if (writerIdle) {
+            LockSupport.unpark(writerThread);
+        }
+    }
+
+    private void offerBlocking(String line) {
+        while (!buffer.offer(line)) {
+            LockSupport.unpark(writerThread);
+            LockSupport.parkNanos(10_000);
+        }
+    }
+
+    // Wait until every line submitted before this call has been written out. The buffer hands
+    // lines over before they are written, so this waits for the writer's own count.
+    void flush() {
+        long target = buffer.published();
+        while (written < target && writerThread.isAlive()) {
+            LockSupport.unpark(writerThread);
+            LockSupport.parkNanos(100_000);
+        }
+    }
+
+    // Flush remaining lines and stop the writer thread
+    void close() {
+        flush();
+        closed = true;
+        LockSupport.unpark(writerThread);
+        try {
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (dropped.get() > 0) {
+            System.err.println("Log writer dropped " + dropped.get() + " lines (backpressure=" + backpressure + ")");
+        }
+    }
+
+    long getDroppedCount() {
+        return dropped.get();
+    }
+
+    private void drainLoop() {
+        StringBuilder batch = new StringBuilder(BATCH_SIZE * 64);
+        while (true) {
+            batch.setLength(0);
+            int lines = buffer.drainTo(batch, BATCH_SIZE);
+            if (lines > 0) {
+                write(batch);
+                written += lines;
+                continue;
+            }
+            if (closed) {
+                break;
+            }
+            // Nothing to do: announce we are idle, re-check, then park until a producer wakes us
+            writerIdle = true;
+            if (buffer.isEmpty() && !closed) {
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            }
+            writerIdle = false;
+        }
+        if (fileWriter != null) {
+            try {
+                fileWriter.close();
+            } catch (IOException e) {
+                System.err.println("Error closing log file: " + e.getMessage());
+            }
+        }
+    }
+
+    private void write(StringBuilder batch) {
+        if (fileWriter == null) {
+            // Looked up per batch so a redirected System.out (e.g. by a benchmark) is honoured
+            System.out.print(batch);
+            System.out.flush();
+            return;
+        }
+        try {
+            fileWriter.append(batch);
+            fileWriter.flush();
+        } catch (IOException e) {
+            System.err.println("Error writing to log file: " + e.getMessage());
+        }
+    }
+}
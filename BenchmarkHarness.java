@@ -0,0 +1,193 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// A small JMH-style harness for measuring throughput of the farm's concurrency primitives.
+// JMH itself cannot be used: it needs benchmark classes in a named package and the project
+// is built from plain javac sources with no external libraries.
+//
+// Each (benchmark, thread count) pair runs in a fresh JVM fork, performs warm-up iterations
+// whose results are thrown away, then measurement iterations. The report gives the mean
+// throughput with a 99.9% confidence interval, like JMH's "thrpt" mode.
+final class BenchmarkHarness {
+    // One benchmark: runs a timed iteration with the given number of threads and returns how
+    // many operations were completed
+    interface Benchmark {
+        long runIteration(int threads, long durationMillis) throws Exception;
+    }
+
+    // What a worker thread does in a loop for the common "N threads hammer one thing" case.
+    // Returns how many operations actually completed, so a non-blocking call that found
+    // nothing to do (an empty field, an enclosure another farmer is taking from) scores 0.
+    interface Operation {
+        long run(int threadIndex);
+    }
+
+    private final String mainClass; // Class whose main forwards to run(), started again in each fork
+    private final Map<String, Benchmark> benchmarks = new LinkedHashMap<>();
+    private int[] threadCounts = {1, 2, 4, 8, 16, 32, 64};
+    private int warmupIterations = 3;
+    private int measurementIterations = 5;
+    private long iterationMillis = 1000;
+    private int forks = 1;
+
+    BenchmarkHarness(String mainClass) {
+        this.mainClass = mainClass;
+    }
+
+    void add(String name, Benchmark benchmark) {
+        benchmarks.put(name, benchmark);
+    }
+
+    // Runs op on the given number of threads for durationMillis, returns the total operations
+    static long runThreads(int threads, long durationMillis, Operation op) throws Exception {
+        AtomicBoolean stop = new AtomicBoolean();
+        CyclicBarrier start = new CyclicBarrier(threads + 1);
+        long[] counts = new long[threads * 16]; // Padded so the counters don't share cache lines
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int index = t;
+            Thread worker = new Thread(() -> {
+                long ops = 0;
+                try {
+                    start.await();
+                    while (!stop.get()) {
+                        ops += op.run(index);
+                    }
+                } catch (Exception e) {
+                    Thread.currentThread().interrupt();
+                }
+                counts[index * 16] = ops;
+            }, "bench-" + t);
+            workers.add(worker);
+            worker.start();
+        }
+        start.await();
+        Thread.sleep(durationMillis);
+        stop.set(true);
+        long total = 0;
+        for (int t = 0; t < threads; t++) {
+            workers.get(t).join();
+            total += counts[t * 16];
+        }
+        return total;
+    }
+
+    // Command line: [--threads=1,2,4] [--warmup=3] [--iterations=5] [--time=1000] [--forks=1] [name...]
+    // --forks=0 runs everything in the current JVM
+    void run(String[] args) throws Exception {
+        List<String> selected = new ArrayList<>();
+        String child = null;
+        for (String arg : args) {
+            if (arg.startsWith("--threads=")) {
+                String[] parts = arg.substring("--threads=".length()).split(",");
+                threadCounts = new int[parts.length];
+                for (int i = 0; i < parts.length; i++) {
+                    threadCounts[i] = Integer.parseInt(parts[i].trim());
+                }
+            } else if (arg.startsWith("--warmup=")) {
+                warmupIterations = Integer.parseInt(arg.substring("--warmup=".length()));
+            } else if (arg.startsWith("--iterations=")) {
+                measurementIterations = Integer.parseInt(arg.substring("--iterations=".length()));
+            } else if (arg.startsWith("--time=")) {
+                iterationMillis = Long.parseLong(arg.substring("--time=".length()));
+            } else if (arg.startsWith("--forks=")) {
+                forks = Integer.parseInt(arg.substring("--forks=".length()));
+            } else if (arg.startsWith("--child=")) {
+                child = arg.substring("--child=".length());
+            } else {
+                selected.add(arg);
+            }
+        }
+
+        if (child != null) {
+            // Inside a fork: run one benchmark at one thread count and print raw scores
+            runChild(child, threadCounts[0]);
+            return;
+        }
+
+        System.out.printf("%-28s %7s %5s %16s %14s  %s%n", "Benchmark", "Threads", "Cnt", "Score", "Error", "Units");
+        for (Map.Entry<String, Benchmark> entry : benchmarks.entrySet()) {
+            if (!selected.isEmpty() && !selected.contains(entry.getKey())) {
+                continue;
+            }
+            for (int threads : threadCounts) {
+                List<Double> scores = new ArrayList<>();
+                for (int fork = 0; fork < Math.max(1, forks); fork++) {
+                    scores.addAll(forks > 0 ? runFork(entry.getKey(), threads) : runInProcess(entry.getValue(), threads));
+                }
+                printResult(entry.getKey(), threads, scores);
+            }
+        }
+    }
+
+    private void runChild(String name, int threads) throws Exception {
+        for (double score : runInProcess(benchmarks.get(name), threads)) {
+            System.out.println("SCORE " + score);
+        }
+    }
+
+    // Warm up, then measure; returns operations per microsecond for each measured iteration
+    private List<Double> runInProcess(Benchmark benchmark, int threads) throws Exception {
+        for (int i = 0; i < warmupIterations; i++) {
+            benchmark.runIteration(threads, iterationMillis);
+        }
+        List<Double> scores = new ArrayList<>();
+        for (int i = 0; i < measurementIterations; i++) {
+            long start = System.nanoTime();
+            long ops = benchmark.runIteration(threads, iterationMillis);
+            double micros = (System.nanoTime() - start) / 1000.0;
+            scores.add(ops / micros);
+        }
+        return scores;
+    }
+
+    // Run one benchmark in a fresh JVM so JIT decisions from other benchmarks cannot leak in
+    private List<Double> runFork(String name, int threads) throws IOException, InterruptedException {
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        List<String> command = List.of(java, "-cp", System.getProperty("java.class.path"),
+                mainClass,
+                "--child=" + name, "--threads=" + threads,
+                "--warmup=" + warmupIterations, "--iterations=" + measurementIterations,
+                "--time=" + iterationMillis);
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        List<Double> scores = new ArrayList<>();
+        for (String line : new String(process.getInputStream().readAllBytes()).split("\n")) {
+            if (line.startsWith("SCORE ")) {
+                scores.add(Double.parseDouble(line.substring(6)));
+            }
+        }
+        process.waitFor();
+        return scores;
+    }
+
+    private static void printResult(String name, int threads, List<Double> scores) {
+        int n = scores.size();
+        if (n == 0) {
+            System.out.printf("%-28s %7d %5d %16s%n", name, threads, 0, "failed");
+            return;
+        }
+        double mean = scores.stream().mapToDouble(Double::doubleValue).average().orElse(0);
+        double variance = 0;
+        for (double score : scores) {
+            variance += (score - mean) * (score - mean);
+        }
+        variance = (n > 1) ? variance / (n - 1) : 0;
+        double error = studentT999(n - 1) * Math.sqrt(variance / n);
+        System.out.printf("%-28s %7d %5d %16.3f +- %11.3f  ops/us%n", name, threads, n, mean, error);
+    }
+
+    // Two-sided 99.9% Student's t critical values, as used for JMH's error column
+    private static double studentT999(int degreesOfFreedom) {
+        double[] table = {Double.NaN, 636.619, 31.599, 12.924, 8.610, 6.869, 5.959, 5.408, 5.041, 4.781,
+                4.587, 4.437, 4.318, 4.221, 4.140, 4.073, 4.015, 3.965, 3.922, 3.883, 3.850};
+        if (degreesOfFreedom <= 0) return Double.NaN;
+        if (degreesOfFreedom < table.length) return table[degreesOfFreedom];
+        return 3.291; // Normal approximation
+    }
+}
@@ -0,0 +1,175 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntFunction;
+
+// Writes the per-tick world state in the compact, delta-encoded format described in
+// SnapshotFormat. Names are stored once in a string dictionary and then referred to by id,
+// activities are stored as their Activity code and parameters, and a tick in which nothing
+// changed costs only a frame header and a few zero counts. Only the tick thread calls this,
+// through FarmLogger.logWorldState.
+final class BinarySnapshotWriter {
+    private final SnapshotLogSink sink;
+    private final Map<String, Integer> dictionary = new HashMap<>();
+    private final List<String> newStrings = new ArrayList<>();
+
+    // State as of the previous frame, to compute deltas against
+    private final Map<String, Integer> lastEnclosure = new LinkedHashMap<>();
+    private final Map<String, WorldState.FieldState> lastFields = new LinkedHashMap<>();
+    private long[] lastFarmers = new long[0]; // Packed activity per agent index
+    private long[] lastBuyers = new long[0];
+
+    private ByteBuffer body = ByteBuffer.allocate(4096);
+    private ByteBuffer frame = ByteBuffer.allocate(4096);
+    private int framesSinceKey = SnapshotFormat.KEYFRAME_INTERVAL; // First frame is a key frame
+
+    BinarySnapshotWriter(SnapshotLogSink sink) throws IOException {
+        this.sink = sink;
+        ByteBuffer header = ByteBuffer.allocate(SnapshotFormat.MAGIC.length + 4);
+        header.put(SnapshotFormat.MAGIC).putInt(SnapshotFormat.VERSION).flip();
+        sink.write(header);
+    }
+
+    void append(WorldState.Snapshot snapshot) throws IOException {
+        int tick = snapshot.tick();
+        IntFunction<String> fieldNames = snapshot::fieldName;
+        boolean key = framesSinceKey >= SnapshotFormat.KEYFRAME_INTERVAL;
+        framesSinceKey = key ? 1 : framesSinceKey + 1;
+        if (key) {
+            lastEnclosure.clear();
+            lastFields.clear();
+        }
+
+        body.clear();
+        newStrings.clear();
+        writeEnclosure(snapshot.enclosureState(), key);
+        writeFields(snapshot.fieldStates(), key);
+        lastFarmers = writeActivities(snapshot.farmers(), lastFarmers, fieldNames, key);
+        lastBuyers = writeActivities(snapshot.buyers(), lastBuyers, fieldNames, key);
+        body.flip();
+
+        frame.clear();
+        ensureFrame(SnapshotFormat.FRAME_HEADER_BYTES + 5);
+        frame.put(key ? SnapshotFormat.KEY_FRAME : SnapshotFormat.DELTA_FRAME).putInt(tick).putInt(0);
+        SnapshotFormat.putVarInt(frame, newStrings.size());
+        for (String s : newStrings) {
+            byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+            ensureFrame(utf8.length + 5);
+            SnapshotFormat.putVarInt(frame, utf8.length).put(utf8);
+        }
+        ensureFrame(body.remaining());
+        frame.put(body);
+        frame.putInt(5, frame.position() - SnapshotFormat.FRAME_HEADER_BYTES); // Payload length
+        frame.flip();
+        sink.write(frame);
+    }
+
+    void close() throws IOException {
+        sink.close();
+    }
+
+    private void writeEnclosure(Map<String, Integer> current, boolean key) {
+        int countPosition = reserveCount();
+        int entries = 0;
+        for (Map.Entry<String, Integer> entry : current.entrySet()) {
+            int previous = lastEnclosure.getOrDefault(entry.getKey(), 0);
+            int value = entry.getValue();
+            if (key || value != previous || !lastEnclosure.containsKey(entry.getKey())) {
+                ensureBody(16);
+                SnapshotFormat.putVarInt(body, idOf(entry.getKey()));
+                SnapshotFormat.putZigZag(body, value - previous);
+                lastEnclosure.put(entry.getKey(), value);
+                entries++;
+            }
+        }
+        body.putInt(countPosition, entries);
+    }
+
+    private void writeFields(Map<String, WorldState.FieldState> current, boolean key) {
+        int countPosition = reserveCount();
+        int entries = 0;
+        for (Map.Entry<String, WorldState.FieldState> entry : current.entrySet()) {
+            WorldState.FieldState previous = lastFields.get(entry.getKey());
+            WorldState.FieldState value = entry.getValue();
+            if (key || !value.equals(previous)) {
+                int previousCount = (previous == null) ? 0 : previous.animalCount();
+                ensureBody(16);
+                SnapshotFormat.putVarInt(body, idOf(entry.getKey()));
+                SnapshotFormat.putZigZag(body, value.animalCount() - previousCount);
+                body.put((byte) (value.isBeingStocked() ? 1 : 0));
+                lastFields.put(entry.getKey(), value);
+                entries++;
+            }
+        }
+        body.putInt(countPosition, entries);
+    }
+
+    // Returns the (possibly grown) array of last written activities
+    private long[] writeActivities(ActivityTable.Snapshot table, long[] last, IntFunction<String> fieldNames, boolean key) {
+        int agents = table.size();
+        if (last.length < agents) {
+            last = Arrays.copyOf(last, Math.max(agents, last.length * 2));
+        }
+        int countPosition = reserveCount();
+        int entries = 0;
+        for (int i = 0; i < agents; i++) {
+            long packed = table.get(i);
+            Activity activity = Activity.activityOf(packed);
+            if (activity != Activity.NONE && (key || packed != last[i])) {
+                int fieldId = Activity.fieldIdOf(packed);
+                ensureBody(24);
+                SnapshotFormat.putVarInt(body, idOf(table.name(i)));
+                body.put((byte) activity.ordinal());
+                SnapshotFormat.putVarInt(body, fieldId == Activity.NO_FIELD ? 0 : idOf(fieldNames.apply(fieldId)) + 1);
+                SnapshotFormat.putVarInt(body, Activity.firstValueOf(packed));
+                SnapshotFormat.putVarInt(body, Activity.secondValueOf(packed));
+                last[i] = packed;
+                entries++;
+            }
+        }
+        body.putInt(countPosition, entries);
+        return last;
+    }
+
+    // Entry counts are only known after the loop, so they are written as a fixed 4-byte int
+    private int reserveCount() {
+        ensureBody(4);
+        int position = body.position();
+        body.putInt(0);
+        return position;
+    }
+
+    private int idOf(String s) {
+        Integer id = dictionary.get(s);
+        if (id == null) {
+            id = dictionary.size();
+            dictionary.put(s, id);
+            newStrings.add(s);
+        }
+        return id;
+    }
+
+    private void ensureBody(int bytes) {
+        if (body.remaining() < bytes) {
+            body = grow(body, bytes);
+        }
+    }
+
+    private void ensureFrame(int bytes) {
+        if (frame.remaining() < bytes) {
+            frame = grow(frame, bytes);
+        }
+    }
+
+    private static ByteBuffer grow(ByteBuffer buffer, int bytes) {
+        ByteBuffer bigger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + bytes));
+        buffer.flip();
+        return bigger.put(buffer);
+    }
+}
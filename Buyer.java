@@ -1,121 +1,120 @@
-import java.util.List;
-import java.util.Random;
+import java.util.SplittableRandom;
 
 // Represents a buyer in the farm simulation.
-// A Buyer will attempt to buy animals from fields, wait if the field is empty
-// or being stocked, and eventually give up if the wait time exceeds a threshold.
-class Buyer extends Thread {
+// A Buyer will attempt to buy animals from fields, wait (parked, not polling) if the field is
+// empty or being stocked, and eventually give up if the wait time exceeds a threshold.
+class Buyer implements Runnable {
     private final Farm farm;
     private final String buyerName;
-    private final WorldState worldState = WorldState.getInstance();
+    private final int buyerId; // Slot in WorldState's activity table
+    private final WorldState worldState;
     private final TickManager tickManager;
+    private final int agentId;
     private int lastCheckedTick = 0;
-    private final Random random = new Random();
-    private int waitedTicks = 0;
-    private Field currentField = null;
-    private static final int MAX_WAIT_TIME = 50;
+    private final SplittableRandom random;
+    private final Field.Waiter waiter; // Its place in the queue of the field it is waiting at
+    private final int maxWaitTime;
+    private final int maxCooldown;
 
     // Constructor to initialize the Buyer
     public Buyer(String buyerName, Farm farm, TickManager tickManager) {
         this.buyerName = buyerName;
+        this.worldState = farm.getWorldState();
+        this.random = farm.newRandom();
+        this.maxWaitTime = farm.getConfig().getBuyerMaxWait();
+        this.maxCooldown = farm.getConfig().getBuyerMaxCooldown();
+        this.buyerId = worldState.registerBuyer(buyerName);
         this.farm = farm;
         this.tickManager = tickManager;
+        this.agentId = tickManager.registerAgent();
+        this.waiter = new Field.Waiter(() -> tickManager.wakeAgent(agentId));
+    }
+
+    // Start the buyer on a platform or virtual thread, depending on AgentRuntime
+    public Thread start() {
+        return AgentRuntime.start("buyer-" + buyerName, this);
     }
 
     @Override
     public void run() {
+        FarmLogger.bindAgent(tickManager, agentId);
         try {
             while (!Thread.interrupted()) {
                 waitForNextTick();
 
-                // Increment wait counter if already waiting for a field
-                if (currentField != null) {
-                    waitedTicks++;
+                Field field = FarmRules.pickField(farm, random);
+                if (field != null) {
+                    buyFrom(field);
                 }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            tickManager.deregisterAgent(agentId);
+        }
+    }
 
-                // If waited too long, give up and reset state
-                if (waitedTicks >= MAX_WAIT_TIME) {
-                    String previousField = (currentField != null) ? currentField.getName() : "none";
-                    FarmLogger.logBuyerGaveUp(buyerName, previousField, waitedTicks);
-
-                    if (currentField != null) {
-                        worldState.removeWaitingBuyer(currentField.getName());
-                    }
-
-                    waitedTicks = 0;
-                    currentField = null;
-                    continue; // Start fresh next tick
+    // Buys one animal from the field. If there is none, the buyer parks until the field is
+    // restocked (see Field.tryBuy) and gives up once it has waited maxWaitTime ticks.
+    private void buyFrom(Field field) throws InterruptedException {
+        int startTick = lastCheckedTick;
+        boolean waiting = false;
+        while (true) {
+            Field.BuyResult result = field.tryBuy(waiter);
+            int waited = lastCheckedTick - startTick;
+            if (result == Field.BuyResult.BOUGHT) {
+                if (waiting) {
+                    worldState.buyerLeavesWaiting(field.getId());
+                    tickManager.clearWake(agentId); // No longer queued, so no wake-up can follow
                 }
+                worldState.updateBuyerActivity(buyerId, Activity.BOUGHT, field.getId(), 0, 0);
+                FarmLogger.logBuyerCollection(buyerName, field.getName(), waited);
+                worldState.getStats().recordPurchase(waited);
 
-                // Get or use current field
-                Field field;
-                if (currentField == null) {
-                    field = getRandomField();
-                    if (field == null) continue;
-                    currentField = field;
-                    // Reset wait counter when selecting a new field
-                    waitedTicks = 0;
-                } else {
-                    field = currentField;
-                }
+                // Wait for a random number of ticks before next attempt
+                waitForTicks(FarmRules.cooldownTicks(maxCooldown, random));
+                return;
+            }
 
-                // Check if field is being stocked
-                if (field.isBeingStocked()) {
-                    worldState.updateBuyerActivity(buyerName, "Waiting - " + field.getName() + 
-                                    " is being stocked (" + waitedTicks + "/" + MAX_WAIT_TIME + ")");
-                    worldState.addWaitingBuyer(field.getName());
-                    FarmLogger.logBuyerWaiting(buyerName, field.getName(), "being_stocked");
-                    continue;
-                }
+            boolean stocking = (result == Field.BuyResult.BEING_STOCKED);
+            worldState.updateBuyerActivity(buyerId, stocking ? Activity.WAITING_BEING_STOCKED : Activity.WAITING_FOR_FIELD,
+                    field.getId(), waited, maxWaitTime);
+            if (!waiting) {
+                waiting = true;
+                worldState.buyerEntersWaiting(field.getId());
+                FarmLogger.logBuyerWaiting(buyerName, field.getName(), stocking ? "being_stocked" : "empty");
+            }
 
-                // Try to buy an animal
-                if (field.tryRemoveAnimal()) {
-                    // Successfully bought an animal
-                    int waited = waitedTicks;
-                    worldState.removeWaitingBuyer(field.getName());
-                    String animalType = field.getName();
-                    worldState.updateBuyerActivity(buyerName, "Bought a " + animalType + " animal");
-                    FarmLogger.logBuyerCollection(buyerName, field.getName(), waited);
-                    
-                    // Reset for next purchase
-                    currentField = null;
-                    waitedTicks = 0;
-                    
-                    // Wait for a random number of ticks before next attempt
-                    waitForTicks(random.nextInt(5) + 1);
-                } else {
-                    // No animal available
-                    worldState.updateBuyerActivity(buyerName, "Waiting for " + field.getName() + 
-                                    " (" + waitedTicks + "/" + MAX_WAIT_TIME + ")");
-                    worldState.addWaitingBuyer(field.getName());
-                    FarmLogger.logBuyerWaiting(buyerName, field.getName(), "empty");
-                }
+            // Parked until the field is restocked or it is time to give up
+            try {
+                lastCheckedTick = tickManager.waitUntilTick(agentId, startTick + maxWaitTime);
+            } catch (InterruptedException e) {
+                // Stopped while waiting: leave the queue so the waiting counts stay exact
+                field.cancelWait(waiter);
+                worldState.buyerLeavesWaiting(field.getId());
+                throw e;
+            }
+            // Give up, unless an animal was handed over just in time
+            if (lastCheckedTick - startTick >= maxWaitTime && field.cancelWait(waiter)) {
+                FarmLogger.logBuyerGaveUp(buyerName, field.getName(), lastCheckedTick - startTick);
+                worldState.getStats().recordGiveUp();
+                worldState.buyerLeavesWaiting(field.getId());
+                tickManager.clearWake(agentId);
+                return;
             }
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
         }
     }
 
-    // Gets a random field from the farm.
-    private Field getRandomField() {
-        List<Field> fields = farm.getFields();
-        if (fields.isEmpty()) return null;
-        return fields.get(random.nextInt(fields.size()));
-    }
-
-    // Wait for a specified number of ticks.
+    // Wait for a specified number of ticks (parked until then, not woken every tick).
     private void waitForTicks(int ticks) throws InterruptedException {
         if (ticks <= 0) return;
 
         int targetTick = tickManager.getCurrentTick() + ticks;
-
-        while (tickManager.getCurrentTick() < targetTick) {
-            waitForNextTick();
-        }
+        lastCheckedTick = tickManager.waitUntilTick(agentId, targetTick);
     }
 
     // Wait for the next tick from the TickManager.
     private void waitForNextTick() throws InterruptedException {
-        lastCheckedTick = tickManager.waitForNextTick(lastCheckedTick);
+        lastCheckedTick = tickManager.waitForNextTick(agentId, lastCheckedTick);
     }
 }
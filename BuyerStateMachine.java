@@ -0,0 +1,71 @@
+import java.util.SplittableRandom;
+
+// A buyer for the EventLoopEngine: the same behaviour as Buyer, one step per tick it is awake.
+// While waiting for stock it sleeps until it would give up; once the field has been restocked it
+// runs wakeUp, which brings the buyer back on the next tick.
+class BuyerStateMachine implements EventLoopEngine.Agent {
+    private final Farm farm;
+    private final String buyerName;
+    private final int buyerId; // Slot in WorldState's activity table
+    private final WorldState worldState;
+    private final SplittableRandom random;
+    private final int maxWaitTime;
+    private final int maxCooldown;
+    private final Field.Waiter waiter;
+    private Field field = null; // The field being bought from, null between purchases
+    private int startTick;      // When the buyer went to it
+    private boolean waiting;
+
+    public BuyerStateMachine(Farm farm, String buyerName, Runnable wakeUp) {
+        this.farm = farm;
+        this.buyerName = buyerName;
+        this.worldState = farm.getWorldState();
+        this.random = farm.newRandom();
+        this.maxWaitTime = farm.getConfig().getBuyerMaxWait();
+        this.maxCooldown = farm.getConfig().getBuyerMaxCooldown();
+        this.buyerId = worldState.registerBuyer(buyerName);
+        this.waiter = new Field.Waiter(wakeUp);
+    }
+
+    @Override
+    public int step(int tick) {
+        if (field == null) {
+            field = FarmRules.pickField(farm, random);
+            if (field == null) return tick + 1;
+            startTick = tick;
+            waiting = false;
+        } else if (tick - startTick >= maxWaitTime && field.cancelWait(waiter)) {
+            // Waited too long (and no animal was handed over just in time): give up, start fresh next tick
+            FarmLogger.logBuyerGaveUp(buyerName, field.getName(), tick - startTick);
+            worldState.getStats().recordGiveUp();
+            worldState.buyerLeavesWaiting(field.getId());
+            field = null;
+            return tick + 1;
+        }
+
+        Field.BuyResult result = field.tryBuy(waiter);
+        int waited = tick - startTick;
+        if (result == Field.BuyResult.BOUGHT) {
+            if (waiting) {
+                worldState.buyerLeavesWaiting(field.getId());
+            }
+            worldState.updateBuyerActivity(buyerId, Activity.BOUGHT, field.getId(), 0, 0);
+            FarmLogger.logBuyerCollection(buyerName, field.getName(), waited);
+            worldState.getStats().recordPurchase(waited);
+            field = null;
+
+            // Sit out the cooldown, then wait for the tick after it like Buyer does
+            return tick + FarmRules.cooldownTicks(maxCooldown, random) + 1;
+        }
+
+        boolean stocking = (result == Field.BuyResult.BEING_STOCKED);
+        worldState.updateBuyerActivity(buyerId, stocking ? Activity.WAITING_BEING_STOCKED : Activity.WAITING_FOR_FIELD,
+                field.getId(), waited, maxWaitTime);
+        if (!waiting) {
+            waiting = true;
+            worldState.buyerEntersWaiting(field.getId());
+            FarmLogger.logBuyerWaiting(buyerName, field.getName(), stocking ? "being_stocked" : "empty");
+        }
+        return startTick + maxWaitTime; // Or earlier, when the field runs wakeUp
+    }
+}
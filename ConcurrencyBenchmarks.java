@@ -0,0 +1,123 @@
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+// Throughput benchmarks for the farm's concurrency primitives, run through BenchmarkHarness.
+// Each benchmark drives the real classes, so any change to their locking shows up here.
+//
+// Usage: java ConcurrencyBenchmarks [--threads=1,2,4,8,16,32,64] [--warmup=3] [--iterations=5]
+//                                   [--time=1000] [--forks=1] [benchmark...]
+class ConcurrencyBenchmarks {
+    public static void main(String[] args) throws Exception {
+        // Every benchmark builds its own unlogged WorldState, so the shared logged one is never created
+        FarmLogger.setTickManager(new TickManager(SimulationConfig.defaults().getTickSize(),
+                TickManager.Mode.WALL_CLOCK, new WorldState()));
+
+        BenchmarkHarness harness = new BenchmarkHarness("ConcurrencyBenchmarks");
+        harness.add("field.tryBuy", (threads, millis) -> fieldTryBuy(false, threads, millis));
+        harness.add("field.tryBuy.timed", (threads, millis) -> fieldTryBuy(true, threads, millis));
+        harness.add("farm.enclosure.exclusive", (threads, millis) -> enclosure(Farm.EnclosurePolicy.EXCLUSIVE, threads, millis));
+        harness.add("farm.enclosure.shared", (threads, millis) -> enclosure(Farm.EnclosurePolicy.SHARED, threads, millis));
+        harness.add("tick.waitForNextTick", ConcurrencyBenchmarks::tickFanOut);
+        harness.add("worldState.updateFieldCount", ConcurrencyBenchmarks::updateFieldCount);
+        harness.add("farmLogger.event", ConcurrencyBenchmarks::loggerThroughput);
+        harness.run(args);
+    }
+
+    // All threads buy from one field the way Buyer does (tryBuy, then cancelWait when there was
+    // nothing to buy), and a thread that finds it empty restocks it, as a farmer would. With
+    // timedLock the field's lock records its contention (metrics.locks), to show what that costs.
+    private static long fieldTryBuy(boolean timedLock, int threads, long millis) throws Exception {
+        WorldState worldState = new WorldState();
+        worldState.getMetrics().setLockTiming(timedLock);
+        Field field = new Field(AnimalType.COWS, worldState, SimulationConfig.defaults());
+        int load = SimulationConfig.defaults().getFarmerMaxAnimals();
+        Field.Waiter[] waiters = new Field.Waiter[threads]; // One per thread, as each buyer has its own
+        for (int t = 0; t < threads; t++) {
+            waiters[t] = new Field.Waiter(() -> { });
+        }
+        return BenchmarkHarness.runThreads(threads, millis, index -> {
+            Field.Waiter waiter = waiters[index];
+            Field.BuyResult result = field.tryBuy(waiter);
+            if (result == Field.BuyResult.BOUGHT) {
+                return 1;
+            }
+            if (!field.cancelWait(waiter) && field.tryBuy(waiter) == Field.BuyResult.BOUGHT) {
+                return 1; // Handed an animal just before giving up
+            }
+            if (result == Field.BuyResult.EMPTY && field.tryStartStocking()) {
+                field.addAnimals(load);
+                field.finishStocking();
+            }
+            return 0;
+        });
+    }
+
+    // Every thread delivers a load and takes animals back out, so all threads contend on the
+    // same enclosure counters; the score is animals taken
+    private static long enclosure(Farm.EnclosurePolicy policy, int threads, long millis) throws Exception {
+        Farm farm = new Farm(new WorldState(), SimulationConfig.defaults().with("enclosure.policy", policy.name()), 1);
+        int[] delivery = DeliveryManager.generateDelivery(SimulationConfig.defaults().getDeliverySize());
+        return BenchmarkHarness.runThreads(threads, millis, index -> {
+            farm.addToEnclosure(delivery);
+            return AnimalType.total(farm.takeFromEnclosure(SimulationConfig.defaults().getFarmerMaxAnimals()));
+        });
+    }
+
+    // N registered agents wait for every tick of a virtual clock, the way Farmer and Buyer do; the
+    // score is ticks per microsecond, so it shows how the cost of one tick (waking all N waiters)
+    // grows with N
+    private static long tickFanOut(int threads, long millis) throws Exception {
+        TickManager tickManager = new TickManager(SimulationConfig.defaults().getTickSize(), TickManager.Mode.VIRTUAL,
+                new WorldState());
+        List<Thread> waiters = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            int agentId = tickManager.registerAgent();
+            Thread waiter = new Thread(() -> {
+                try {
+                    int tick = tickManager.getCurrentTick();
+                    while (true) {
+                        tick = tickManager.waitForNextTick(agentId, tick);
+                    }
+                } catch (InterruptedException e) {
+                    // Stopped at the end of the iteration
+                } finally {
+                    tickManager.deregisterAgent(agentId);
+                }
+            }, "tick-waiter-" + i);
+            waiters.add(waiter);
+            waiter.start();
+        }
+        tickManager.start();
+        int startTick = tickManager.getCurrentTick();
+        Thread.sleep(millis);
+        int endTick = tickManager.getCurrentTick();
+        tickManager.stopTicks();
+        for (Thread waiter : waiters) {
+            waiter.join();
+        }
+        return endTick - startTick;
+    }
+
+    // Every thread updates a different field's count, like buyers spread over the fields
+    private static long updateFieldCount(int threads, long millis) throws Exception {
+        WorldState worldState = new WorldState();
+        return BenchmarkHarness.runThreads(threads, millis, index -> {
+            worldState.updateFieldCount(index % AnimalType.COUNT, index);
+            return 1;
+        });
+    }
+
+    // Agents logging events as fast as they can, measured end to end through the writer thread
+    private static long loggerThroughput(int threads, long millis) throws Exception {
+        File file = File.createTempFile("farm-bench", ".log");
+        file.deleteOnExit();
+        FarmLogger.configureEventOutput(file.getPath(), AsyncLogWriter.Backpressure.BLOCK);
+        long ops = BenchmarkHarness.runThreads(threads, millis, index -> {
+            FarmLogger.logBuyerWaiting(String.valueOf(index), "cows", "being_stocked");
+            return 1;
+        });
+        FarmLogger.flush(); // Inside the timed iteration, so a writer that falls behind lowers the score
+        return ops;
+    }
+}
@@ -1,14 +0,0 @@
-public class Config {
-    public static final int TICK_SIZE = 100;
-    public static final int NUMBER_OF_FARMERS = 3;
-    public static final int NUMBER_OF_BUYERS = 3;
-    public static final int DELIVERY_FREQUENCY = 100;
-    public static final int SIMULATION_DURATION = 10000;
-    public static final int DELIVERY_SIZE = 10;
-    public static final int FARMER_BREAK_CHANCE = 5;
-    public static final int FARMER_BREAK_MIN_DURATION = 20;
-    public static final int FARMER_BREAK_MAX_DURATION = 40;
-    public static final int FIELD_CAPACITY = 50;
-    public static final int FIELD_INITIAL_ANIMAL_COUNT = 5;
-    public static final int FARMER_MAX_ANIMALS = 10;
-}
@@ -1,39 +1,55 @@
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.random.RandomGenerator;
 
 /**
  * Manages the periodic delivery of animals to the farm.
- * Runs as a separate thread and delivers random animals based on configuration settings.
+ * Runs on its own (platform or virtual) thread and delivers random animals based on configuration settings.
  */
-class DeliveryManager extends Thread {
+class DeliveryManager implements Runnable {
     private final Farm farm;
-    private final Random random = new Random();
+    private final SplittableRandom random;
     private final TickManager tickManager; // Manages the timing system
+    private final int agentId;
     private int lastCheckedTick = 0;
-    private static final Random staticRandom = new Random();
 
     public DeliveryManager(Farm farm, TickManager tickManager) {
         this.farm = farm;
+        this.random = farm.newRandom();
         this.tickManager = tickManager;
+        this.agentId = tickManager.registerAgent();
+    }
+
+    // Start the delivery manager on a platform or virtual thread, depending on AgentRuntime
+    public Thread start() {
+        return AgentRuntime.start("delivery-manager", this);
     }
 
     @Override
     public void run() {
+        FarmLogger.bindAgent(tickManager, agentId);
+        try {
+            deliverLoop();
+        } finally {
+            tickManager.deregisterAgent(agentId);
+        }
+    }
+
+    private void deliverLoop() {
         while (true) {
             try {
                 // Wait for the next tick before processing
-                lastCheckedTick = tickManager.waitForNextTick(lastCheckedTick);
+                lastCheckedTick = tickManager.waitForNextTick(agentId, lastCheckedTick);
                 
                 // Randomly determine if a delivery should happen this tick
-                if (random.nextInt(Config.DELIVERY_FREQUENCY) == 0) {
-                    List<String> animals = generateDelivery();
-                    
+                int[] animals = FarmRules.delivery(farm.getConfig(), random);
+                if (animals != null) {
                     // First log the delivery event
                     FarmLogger.logDelivery(FarmLogger.formatDelivery(animals));
                     
                     // Add the animals to the farm enclosure
                     farm.addToEnclosure(animals);
+                    farm.getWorldState().getStats().recordDelivery(AnimalType.total(animals));
                 }
                 
             } catch (InterruptedException e) {
@@ -43,16 +59,18 @@ class DeliveryManager extends Thread {
         }
     }
 
-    // Creates a randomized list of animals to deliver to the farm
-    public static List<String> generateDelivery() {
-        List<String> animals = new ArrayList<>();
-        int totalAnimals = Config.DELIVERY_SIZE;
-        String[] animalTypes = {"pigs", "cows", "sheep", "llamas", "chickens"};
+    // Creates a randomized delivery as a count per AnimalType (used for deliveries outside the
+    // simulation, e.g. the GUI button, which need not be reproducible)
+    public static int[] generateDelivery(int totalAnimals) {
+        return generateDelivery(ThreadLocalRandom.current(), totalAnimals);
+    }
+
+    public static int[] generateDelivery(RandomGenerator random, int totalAnimals) {
+        int[] animals = AnimalType.newCounts();
 
-        // Randomly select animals up to the delivery size specified in Config.java
+        // Randomly select animals up to the configured delivery size
         for (int i = 0; i < totalAnimals; i++) {
-            String animal = animalTypes[staticRandom.nextInt(animalTypes.length)];
-            animals.add(animal);
+            animals[random.nextInt(AnimalType.COUNT)]++;
         }
 
         return animals;
@@ -0,0 +1,111 @@
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+// Single-threaded simulation engine, an alternative to one thread per agent.
+// The delivery manager, farmers and buyers are state machines (FarmerStateMachine,
+// BuyerStateMachine) that one loop steps tick by tick on the calling thread, so no agent ever
+// blocks and no lock is ever contended. Agents that are asleep (walking, stocking, cooling
+// down) are skipped until their wake tick.
+//
+// Agents are stepped in the order they were added, which is the order the threaded agents take
+// turns in in deterministic mode, so with the same seed both engines produce the same events.
+// The TickManager is only the clock that WorldState and FarmLogger read: the loop advances it
+// with incrementTick() and it is never started.
+class EventLoopEngine {
+    // An agent as a state machine
+    interface Agent {
+        // Runs the agent from where it last waited until it next waits for the clock, and
+        // returns the tick it wants to run again at
+        int step(int tick);
+    }
+
+    private final Farm farm;
+    private final TickManager tickManager;
+    private Agent[] agents = new Agent[16];
+    private int[] wakeTicks = new int[16]; // Indexed like agents
+    private int agentCount = 0;
+    private long agentSteps = 0;
+
+    public EventLoopEngine(Farm farm, TickManager tickManager) {
+        this.farm = farm;
+        this.tickManager = tickManager;
+    }
+
+    // Adds an agent that first runs at the next tick, returns its id
+    public int addAgent(Agent agent) {
+        if (agentCount == agents.length) {
+            agents = Arrays.copyOf(agents, agentCount * 2);
+            wakeTicks = Arrays.copyOf(wakeTicks, agentCount * 2);
+        }
+        agents[agentCount] = agent;
+        wakeTicks[agentCount] = tickManager.getCurrentTick() + 1;
+        return agentCount++;
+    }
+
+    public int addDeliveryManager() {
+        return addAgent(new DeliveryAgent(farm));
+    }
+
+    public int addFarmer(String farmerName) {
+        return addAgent(new FarmerStateMachine(farm, farmerName));
+    }
+
+    public int addBuyer(String buyerName) {
+        int id = agentCount;
+        return addAgent(new BuyerStateMachine(farm, buyerName, () -> wake(id)));
+    }
+
+    // Steps the agent again at the next tick, if it was asleep for longer
+    public void wake(int id) {
+        wakeTicks[id] = Math.min(wakeTicks[id], tickManager.getCurrentTick() + 1);
+    }
+
+    // Runs the simulation on the calling thread until lastTick has been simulated
+    public void runUntil(int lastTick) {
+        boolean logging = FarmLogger.isEnabled();
+        while (tickManager.getCurrentTick() < lastTick) {
+            tickManager.incrementTick();
+            int tick = tickManager.getCurrentTick();
+            for (int id = 0; id < agentCount; id++) {
+                if (wakeTicks[id] <= tick) {
+                    if (logging) {
+                        FarmLogger.actAs(id);
+                    }
+                    wakeTicks[id] = agents[id].step(tick);
+                    agentSteps++;
+                }
+            }
+        }
+    }
+
+    public int getAgentCount() {
+        return agentCount;
+    }
+
+    // How many times an agent was stepped; agents asleep for a tick are not stepped
+    public long getAgentSteps() {
+        return agentSteps;
+    }
+
+    // The delivery manager: may deliver every tick
+    private static final class DeliveryAgent implements Agent {
+        private final Farm farm;
+        private final SplittableRandom random;
+
+        DeliveryAgent(Farm farm) {
+            this.farm = farm;
+            this.random = farm.newRandom();
+        }
+
+        @Override
+        public int step(int tick) {
+            int[] animals = FarmRules.delivery(farm.getConfig(), random);
+            if (animals != null) {
+                FarmLogger.logDelivery(FarmLogger.formatDelivery(animals));
+                farm.addToEnclosure(animals);
+                farm.getWorldState().getStats().recordDelivery(AnimalType.total(animals));
+            }
+            return tick + 1;
+        }
+    }
+}
@@ -0,0 +1,179 @@
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.ToDoubleFunction;
+
+// Monte-Carlo experiment runner.
+// Runs many independent farms side by side in one JVM: every run gets its own WorldState, Farm
+// and virtual-time TickManager, with all random choices derived from the run's seed. Runs are
+// spread over a ForkJoinPool and the results of the runs of each scenario are aggregated as a
+// mean with a 95% confidence interval.
+//
+// Usage: java ExperimentRunner [--runs=20] [--parallelism=<cores>] [--seed=1]
+//                             [--sweep=<key>=<value>,<value>...]... [--config=<file>] [--<key>=<value>]...
+// Every combination of the swept values is a scenario, applied on top of the base configuration,
+// e.g. --sweep=enclosure.policy=EXCLUSIVE,SHARED --sweep=buyers=3,10,30 --simulation.duration=5000
+class ExperimentRunner {
+    // One set of parameters to compare against the others
+    record Scenario(String name, SimulationConfig config) {
+    }
+
+    // What one run produced
+    record RunResult(Scenario scenario, long seed, long purchases, long giveUps, double meanPurchaseWait,
+                     int p50PurchaseWait, int p99PurchaseWait, long animalsDelivered, long animalsStocked,
+                     double farmerUtilisation, long millis) {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int runs = 20;
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        long baseSeed = 1;
+        Map<String, String[]> sweeps = new LinkedHashMap<>();
+        for (String arg : args) {
+            if (arg.startsWith("--runs=")) {
+                runs = Integer.parseInt(arg.substring("--runs=".length()));
+            } else if (arg.startsWith("--parallelism=")) {
+                parallelism = Integer.parseInt(arg.substring("--parallelism=".length()));
+            } else if (arg.startsWith("--seed=")) {
+                baseSeed = Long.parseLong(arg.substring("--seed=".length()));
+            } else if (arg.startsWith("--sweep=") && arg.indexOf('=', 8) > 8) {
+                int equals = arg.indexOf('=', 8);
+                sweeps.put(arg.substring(8, equals), arg.substring(equals + 1).split(","));
+            }
+        }
+        if (sweeps.isEmpty()) {
+            sweeps.put("enclosure.policy", new String[] {"EXCLUSIVE", "SHARED"});
+            sweeps.put("farmers", new String[] {"1", "3"});
+            sweeps.put("buyers", new String[] {"3", "10"});
+        }
+
+        List<Scenario> scenarios;
+        try {
+            scenarios = expand(SimulationConfig.fromArgs(args), sweeps);
+        } catch (IllegalArgumentException e) {
+            System.err.println("Invalid configuration: " + e.getMessage());
+            return;
+        }
+        int ticks = scenarios.get(0).config().getSimulationDuration();
+
+        // Nobody reads the events of a thousand farms, and thousands of agents fit best on virtual threads
+        FarmLogger.setEnabled(false);
+        AgentRuntime.setKind(AgentRuntime.Kind.VIRTUAL);
+
+        long start = System.nanoTime();
+        List<RunResult> results = runAll(scenarios, runs, baseSeed, parallelism);
+        System.out.printf("%d runs of %d ticks on %d workers in %.1f s%n", results.size(), ticks, parallelism,
+                (System.nanoTime() - start) / 1e9);
+        report(results);
+    }
+
+    // Every combination of the swept values, applied to base
+    static List<Scenario> expand(SimulationConfig base, Map<String, String[]> sweeps) {
+        List<Scenario> scenarios = new ArrayList<>();
+        scenarios.add(new Scenario("", base));
+        for (Map.Entry<String, String[]> sweep : sweeps.entrySet()) {
+            List<Scenario> next = new ArrayList<>();
+            for (Scenario scenario : scenarios) {
+                for (String value : sweep.getValue()) {
+                    String name = (scenario.name().isEmpty() ? "" : scenario.name() + " ") + sweep.getKey() + "=" + value;
+                    next.add(new Scenario(name, scenario.config().with(sweep.getKey(), value)));
+                }
+            }
+            scenarios = next;
+        }
+        return scenarios;
+    }
+
+    // Runs every scenario with seeds baseSeed, baseSeed + 1, ... so that scenarios are compared
+    // on the same sequence of seeds
+    static List<RunResult> runAll(List<Scenario> scenarios, int runs, long baseSeed, int parallelism)
+            throws Exception {
+        List<Callable<RunResult>> tasks = new ArrayList<>();
+        for (Scenario scenario : scenarios) {
+            for (int run = 0; run < runs; run++) {
+                long seed = baseSeed + run;
+                tasks.add(() -> runOnce(scenario, seed));
+            }
+        }
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            List<RunResult> results = new ArrayList<>();
+            for (Future<RunResult> future : pool.invokeAll(tasks)) {
+                results.add(future.get());
+            }
+            return results;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    // One complete simulation in virtual time, isolated from every other run
+    static RunResult runOnce(Scenario scenario, long seed) throws InterruptedException {
+        long start = System.nanoTime();
+        SimulationConfig config = scenario.config();
+        WorldState worldState = new WorldState();
+        worldState.getMetrics().setLockTiming(config.isMetricsLocks());
+        Farm farm = new Farm(worldState, config, seed);
+        farm.addField();
+        TickManager.Mode mode = config.isDeterministic() ? TickManager.Mode.DETERMINISTIC : TickManager.Mode.VIRTUAL;
+        TickManager tickManager = new TickManager(config.getTickSize(), mode, worldState);
+
+        List<Thread> threads = new ArrayList<>();
+        threads.add(new DeliveryManager(farm, tickManager).start());
+        for (int i = 0; i < config.getNumberOfFarmers(); i++) {
+            threads.add(new Farmer(farm, String.valueOf(i + 1), tickManager).start());
+        }
+        for (int i = 0; i < config.getNumberOfBuyers(); i++) {
+            threads.add(new Buyer(String.valueOf(i + 1), farm, tickManager).start());
+        }
+        tickManager.start();
+        tickManager.awaitTick(config.getSimulationDuration());
+        tickManager.stopTicks();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        SimulationStats stats = worldState.getStats();
+        return new RunResult(scenario, seed, stats.getPurchases(), stats.getGiveUps(), stats.getMeanPurchaseWait(),
+                stats.getPurchaseWaitPercentile(0.5), stats.getPurchaseWaitPercentile(0.99),
+                stats.getAnimalsDelivered(), stats.getAnimalsStocked(), 100 * worldState.getFarmerUtilisation(),
+                (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private static void report(List<RunResult> results) {
+        Map<Scenario, List<RunResult>> byScenario = new LinkedHashMap<>();
+        for (RunResult result : results) {
+            byScenario.computeIfAbsent(result.scenario(), s -> new ArrayList<>()).add(result);
+        }
+        System.out.printf("%-52s %5s %20s %18s %16s %16s %16s %20s %16s%n",
+                "scenario", "runs", "purchases", "give_ups", "mean_wait", "p50_wait", "p99_wait", "stocked",
+                "farmer_util%");
+        for (Map.Entry<Scenario, List<RunResult>> entry : byScenario.entrySet()) {
+            List<RunResult> runs = entry.getValue();
+            System.out.printf("%-52s %5d %20s %18s %16s %16s %16s %20s %16s%n", entry.getKey().name(), runs.size(),
+                    meanAndInterval(runs, RunResult::purchases),
+                    meanAndInterval(runs, RunResult::giveUps),
+                    meanAndInterval(runs, RunResult::meanPurchaseWait),
+                    meanAndInterval(runs, RunResult::p50PurchaseWait),
+                    meanAndInterval(runs, RunResult::p99PurchaseWait),
+                    meanAndInterval(runs, RunResult::animalsStocked),
+                    meanAndInterval(runs, RunResult::farmerUtilisation));
+        }
+    }
+
+    // "mean +- half-width" of a normal-approximation 95% confidence interval
+    private static String meanAndInterval(List<RunResult> runs, ToDoubleFunction<RunResult> metric) {
+        double mean = runs.stream().mapToDouble(metric).average().orElse(0);
+        double variance = 0;
+        for (RunResult run : runs) {
+            double d = metric.applyAsDouble(run) - mean;
+            variance += d * d;
+        }
+        variance = (runs.size() > 1) ? variance / (runs.size() - 1) : 0;
+        return String.format("%.1f +- %.1f", mean, 1.96 * Math.sqrt(variance / runs.size()));
+    }
+}
@@ -1,55 +1,142 @@
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.LongAdder;
 
 public class Farm {
-    private final List<String> enclosure = new ArrayList<>();
-    private final List<Field> fields = new ArrayList<>();
-    private final WorldState worldState = WorldState.getInstance();
+    // Who may take from the enclosure at the same time
+    public enum EnclosurePolicy {
+        EXCLUSIVE, // One farmer at a time, as the specification describes
+        SHARED     // Any number of farmers take concurrently
+    }
+
+    // The enclosure is lock-free: one atomic counter per AnimalType plus an atomic total.
+    // Deliveries add to the type counters before the total, so every animal counted in the
+    // total can always be found in some type counter by a farmer that has reserved it.
+    private final AtomicIntegerArray enclosure = new AtomicIntegerArray(AnimalType.COUNT);
+    private final AtomicInteger enclosureTotal = new AtomicInteger();
+    private final AtomicInteger nextTakeType = new AtomicInteger(); // Rotated so no type is always left behind
+    private final AtomicBoolean takeInProgress = new AtomicBoolean(); // Used by the EXCLUSIVE policy
+    private final EnclosurePolicy enclosurePolicy;
+    private final List<Field> fields = new ArrayList<>(); // Indexed by AnimalType ordinal
+    private final WorldState worldState;
+    private final SimulationConfig config;
+    private final StockingPolicy stockingPolicy;
+    private final SplittableRandom seeds; // Split into one random stream per agent
+    private final LongAdder takes;        // Takes that came away with animals
+    private final LongAdder missedTakes;  // Takes that found the enclosure drained or, under EXCLUSIVE, busy
+
+    public Farm() {
+        this(SimulationConfig.defaults());
+    }
+
+    public Farm(SimulationConfig config) {
+        this(WorldState.getInstance(), config, config.hasSeed() ? config.getSeed() : new Random().nextLong());
+    }
+
+    public Farm(EnclosurePolicy enclosurePolicy) {
+        this(SimulationConfig.defaults().with("enclosure.policy", enclosurePolicy.name()));
+    }
+
+    // A farm with its own world state, whose agents' random choices all derive from seed
+    public Farm(WorldState worldState, SimulationConfig config, long seed) {
+        this.worldState = worldState;
+        this.config = config;
+        this.enclosurePolicy = config.getEnclosurePolicy();
+        this.stockingPolicy = StockingPolicy.of(config.getStockingPolicy());
+        this.seeds = new SplittableRandom(seed);
+        this.takes = worldState.getMetrics().counter("enclosure.takes");
+        this.missedTakes = worldState.getMetrics().counter("enclosure.missed_takes");
+    }
 
     public void addField() {
-        fields.add(new Field("pigs"));
-        fields.add(new Field("cows"));
-        fields.add(new Field("sheep"));
-        fields.add(new Field("llamas"));
-        fields.add(new Field("chickens"));
-        
+        // One field per animal type; a field's id is its type's ordinal
+        for (AnimalType type : AnimalType.values()) {
+            fields.add(new Field(type, worldState, config));
+        }
+
         // Initialize field states in WorldState
         for (Field field : fields) {
-            worldState.initializeField(field.getName(), field.getCurrentCount());
+            worldState.initializeField(field.getId(), field.getName(), field.getCurrentCount());
         }
     }
 
-    public synchronized void addToEnclosure(List<String> animals) {
-        if (animals == null || animals.isEmpty()) return;
-        
-        // Add all animals to the enclosure
-        enclosure.addAll(animals);
-        
+    // Add a delivery, given as a count per AnimalType
+    public void addToEnclosure(int[] animals) {
+        int total = AnimalType.total(animals);
+        if (total == 0) return;
+
+        // Type counters first, then the total that makes the animals visible to farmers
+        for (int type = 0; type < AnimalType.COUNT; type++) {
+            if (animals[type] != 0) {
+                enclosure.addAndGet(type, animals[type]);
+            }
+        }
+        enclosureTotal.addAndGet(total);
+
         // Update WorldState for GUI
         worldState.addAnimalsToEnclosure(animals);
-        worldState.updateGUI();
-        
-        // Notify waiting farmers
-        notifyAll();
-    }
-
-    // Take up to maxAnimals from the enclosure
-    public synchronized List<String> takeFromEnclosure(int maxAnimals) {
-        // Wait until there are animals delivered into the enclosure
-        while (enclosure.isEmpty()) {
-            try {
-                wait();
-            } catch (Exception e) {
-                Thread.currentThread().interrupt();
+    }
+
+    // Take up to maxAnimals from the enclosure as a count per AnimalType, without blocking.
+    // Returns an empty load if the enclosure is empty or, under the EXCLUSIVE policy, if
+    // another farmer is taking right now; the caller simply tries again on a later tick.
+    public int[] takeFromEnclosure(int maxAnimals) {
+        int[] taken = AnimalType.newCounts();
+        if (enclosurePolicy == EnclosurePolicy.EXCLUSIVE && !takeInProgress.compareAndSet(false, true)) {
+            missedTakes.increment();
+            return taken;
+        }
+        try {
+            int reserved = reserve(maxAnimals);
+            if (reserved == 0) {
+                missedTakes.increment();
+                return taken;
+            }
+            takes.increment();
+            // Claim the reserved animals type by type, starting from a different type each take.
+            // Other farmers may be claiming too, so this can take more than one pass.
+            int remaining = reserved;
+            int start = Math.floorMod(nextTakeType.getAndIncrement(), AnimalType.COUNT);
+            for (int i = 0; remaining > 0; i++) {
+                int type = (start + i) % AnimalType.COUNT;
+                int claimed = claim(type, remaining);
+                taken[type] += claimed;
+                remaining -= claimed;
+            }
+            worldState.removeAnimalsFromEnclosure(taken);
+            return taken;
+        } finally {
+            if (enclosurePolicy == EnclosurePolicy.EXCLUSIVE) {
+                takeInProgress.set(false);
+            }
+        }
+    }
+
+    // Reserve up to maxAnimals from the total, returns how many were reserved
+    private int reserve(int maxAnimals) {
+        while (true) {
+            int available = enclosureTotal.get();
+            int reserved = Math.min(available, maxAnimals);
+            if (reserved == 0 || enclosureTotal.compareAndSet(available, available - reserved)) {
+                return reserved;
             }
         }
-        // ArrayList means animals are removed in a FIFO order
-        List<String> taken = new ArrayList<>();
-        for (int i = 0; i < maxAnimals && !enclosure.isEmpty(); i++) {
-            taken.add(enclosure.removeFirst());
+    }
+
+    // Take up to wanted animals of one type, returns how many were taken
+    private int claim(int type, int wanted) {
+        while (true) {
+            int available = enclosure.get(type);
+            int claimed = Math.min(available, wanted);
+            if (claimed == 0 || enclosure.compareAndSet(type, available, available - claimed)) {
+                return claimed;
+            }
         }
-        worldState.removeAnimalsFromEnclosure(taken);
-        return taken;
     }
 
     // Simple getter methods for fields and enclosure
@@ -57,8 +144,37 @@ public class Farm {
         return fields;
     }
 
-    public synchronized boolean hasAnimalsInEnclosure() {
-        return !enclosure.isEmpty();
+    // The field that holds the given animal type
+    public Field getField(AnimalType type) {
+        return fields.get(type.ordinal());
+    }
+
+    public boolean hasAnimalsInEnclosure() {
+        return enclosureTotal.get() > 0;
+    }
+
+    public EnclosurePolicy getEnclosurePolicy() {
+        return enclosurePolicy;
+    }
+
+    // How farmers order the fields of a load (farmer.stocking.policy)
+    public StockingPolicy getStockingPolicy() {
+        return stockingPolicy;
+    }
+
+    public WorldState getWorldState() {
+        return worldState;
+    }
+
+    // The parameters this farm and its agents run with
+    public SimulationConfig getConfig() {
+        return config;
+    }
+
+    // An independent random stream for one agent. Agents are created in a fixed order, so the
+    // same farm seed gives every agent the same stream again.
+    public synchronized SplittableRandom newRandom() {
+        return seeds.split();
     }
 
 }
@@ -1,39 +1,68 @@
 import java.awt.BorderLayout;
 import java.awt.Color;
+import java.awt.Component;
 import java.awt.Dimension;
 import java.awt.FlowLayout;
 import java.awt.Font;
 import java.awt.GridLayout;
-import java.util.List;
+import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import javax.swing.BorderFactory;
+import javax.swing.DefaultListCellRenderer;
 import javax.swing.JButton;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
+import javax.swing.JList;
 import javax.swing.JPanel;
 import javax.swing.JScrollPane;
 import javax.swing.SwingUtilities;
+import javax.swing.Timer;
 
 public class FarmGUI extends JFrame {
-    private final WorldState worldState = WorldState.getInstance(); // imports WorldState which kind of acts as a Singleton state manager for displaying the current worldstate in the GUI
+    private static final long serialVersionUID = 1L;
+
+    // Panels that can be marked out of date, combined as bits for markDirty
+    public static final int FIELDS = 1;
+    public static final int FARMERS = 2;
+    public static final int BUYERS = 4;
+    public static final int ENCLOSURE = 8;
+    public static final int TICK = 16;
+    private static final int ALL = FIELDS | FARMERS | BUYERS | ENCLOSURE | TICK;
+
+    private final transient WorldState worldState; // The farm's WorldState, which acts as the state manager for displaying the current worldstate in the GUI
     private final JPanel fieldsPanel;
-    private final JPanel farmersPanel;
-    private final JPanel buyersPanel;
     private final JPanel enclosurePanel;
+    private final ActivityListModel farmersModel;
+    private final ActivityListModel buyersModel;
+
+    // One persistent row per field and one chip per animal type; refreshes only change their
+    // text, colour and visibility instead of rebuilding the panels
+    private final transient Map<String, JPanel> fieldRows = new HashMap<>();
+    private final JPanel[] enclosureChips = new JPanel[AnimalType.COUNT];
+    private final JLabel[] enclosureLabels = new JLabel[AnimalType.COUNT];
+    private final JPanel emptyEnclosureChip;
     private final JLabel tickLabel;
     private boolean simulationEnded = false;
-    private final TickManager tickManager;
+    private final transient TickManager tickManager;
     private final JButton pauseButton;
     private final JButton playButton;
-    private final Farm farm;
+    private final transient Farm farm;
     private int farmerCounter;
     private int buyerCounter;
 
+    // Changes only set bits here; the refresh timer redraws the marked panels once per frame,
+    // so any number of changes between two frames costs a single redraw on the EDT
+    private final AtomicInteger dirtyPanels = new AtomicInteger(ALL);
+    private final Timer refreshTimer;
+
     public FarmGUI(TickManager tickManager, Farm farm) {
         this.tickManager = tickManager;
         this.farm = farm;
-        this.farmerCounter = Config.NUMBER_OF_FARMERS;
-        this.buyerCounter = Config.NUMBER_OF_BUYERS;
+        this.worldState = farm.getWorldState();
+        this.farmerCounter = farm.getConfig().getNumberOfFarmers();
+        this.buyerCounter = farm.getConfig().getNumberOfBuyers();
 
         setTitle("Farm Simulation");
         setSize(1000, 600);
@@ -42,9 +71,23 @@ public class FarmGUI extends JFrame {
 
         // Create GUI panels
         fieldsPanel = new JPanel(new GridLayout(0, 1));
-        farmersPanel = new JPanel(new GridLayout(0, 1));
-        buyersPanel = new JPanel(new GridLayout(0, 1));
-        enclosurePanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        enclosurePanel = new JPanel(new FlowLayout(FlowLayout.CENTER, 20, 10));
+        enclosurePanel.setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
+        enclosurePanel.setBackground(new Color(240, 240, 250));
+        for (AnimalType type : AnimalType.values()) {
+            enclosureLabels[type.ordinal()] = new JLabel();
+            enclosureChips[type.ordinal()] = createChip(enclosureLabels[type.ordinal()],
+                    new Color(180, 180, 220), new Color(230, 240, 255));
+            enclosurePanel.add(enclosureChips[type.ordinal()]);
+        }
+        emptyEnclosureChip = createChip(new JLabel("Empty"), new Color(220, 180, 180), new Color(255, 230, 230));
+        enclosurePanel.add(emptyEnclosureChip);
+
+        // Farmers and buyers are virtualised lists: only the visible rows are ever rendered
+        farmersModel = new ActivityListModel(worldState.getFarmerActivityTable(), worldState::getFieldName);
+        buyersModel = new ActivityListModel(worldState.getBuyerActivityTable(), worldState::getFieldName);
+        JList<String> farmersList = createActivityList(farmersModel);
+        JList<String> buyersList = createActivityList(buyersModel);
         tickLabel = new JLabel("Tick: 0", JLabel.CENTER);
         tickLabel.setFont(new Font("Arial", Font.BOLD, 16));
 
@@ -94,12 +137,12 @@ public class FarmGUI extends JFrame {
 
         JPanel westPanel = new JPanel(new BorderLayout());
         westPanel.add(buyersTitle, BorderLayout.NORTH);
-        westPanel.add(new JScrollPane(buyersPanel), BorderLayout.CENTER);
+        westPanel.add(new JScrollPane(buyersList), BorderLayout.CENTER);
         westPanel.setPreferredSize(new Dimension(300, 300));
 
         JPanel eastPanel = new JPanel(new BorderLayout());
         eastPanel.add(farmersTitle, BorderLayout.NORTH);
-        eastPanel.add(new JScrollPane(farmersPanel), BorderLayout.CENTER);
+        eastPanel.add(new JScrollPane(farmersList), BorderLayout.CENTER);
         eastPanel.setPreferredSize(new Dimension(300, 300));
 
         JPanel southPanel = new JPanel(new BorderLayout());
@@ -121,6 +164,9 @@ public class FarmGUI extends JFrame {
         add(eastPanel, BorderLayout.EAST);
         add(southPanel, BorderLayout.SOUTH);
 
+        refreshTimer = new Timer(1000 / farm.getConfig().getGuiRefreshFps(), e -> refresh());
+        refreshTimer.start();
+
         setVisible(true);
     }
 
@@ -149,7 +195,7 @@ public class FarmGUI extends JFrame {
     // Method to dynamically add a new delivery to the simulation
     private void addDelivery() {
         if (!simulationEnded && farm != null) {
-            List<String> animals = DeliveryManager.generateDelivery();
+            int[] animals = DeliveryManager.generateDelivery(farm.getConfig().getDeliverySize());
 
             FarmLogger.logDelivery(FarmLogger.formatDelivery(animals));
 
@@ -159,132 +205,130 @@ public class FarmGUI extends JFrame {
         }
     }
 
-    // Standardized method to update the GUI with the latest state of the simulation that calls other update methods
-    public void update() {
-        SwingUtilities.invokeLater(() -> {
-            updateFields();
+    // Mark panels as out of date; safe to call from any thread and cheap enough to call on
+    // every state change, since it skips the atomic write when the bits are already set
+    public void markDirty(int panels) {
+        int current = dirtyPanels.get();
+        if ((current & panels) != panels) {
+            dirtyPanels.getAndAccumulate(panels, (a, b) -> a | b);
+        }
+    }
+
+    // Runs on the EDT once per frame and redraws only the panels marked since the last frame.
+    // Fields and enclosure are drawn from one snapshot so they always agree with each other.
+    private void refresh() {
+        int dirty = dirtyPanels.getAndSet(0);
+        WorldState.Snapshot snapshot = ((dirty & (FIELDS | ENCLOSURE)) != 0) ? worldState.snapshot() : null;
+        if ((dirty & FIELDS) != 0) {
+            updateFields(snapshot);
+        }
+        if ((dirty & FARMERS) != 0) {
             updateFarmers();
+        }
+        if ((dirty & BUYERS) != 0) {
             updateBuyers();
-            updateEnclosure();
-            if (!simulationEnded) {
-                updateTick();
-            }
-        });
+        }
+        if ((dirty & ENCLOSURE) != 0) {
+            updateEnclosure(snapshot);
+        }
+        if ((dirty & TICK) != 0 && !simulationEnded) {
+            updateTick();
+        }
     }
 
-    private void updateFields() {
-        fieldsPanel.removeAll();
-        for (Map.Entry<String, WorldState.FieldState> entry : worldState.getFieldStates().entrySet()) {
-            JPanel fieldPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+    private void updateFields(WorldState.Snapshot snapshot) {
+        for (Map.Entry<String, WorldState.FieldState> entry : snapshot.fieldStates().entrySet()) {
+            JPanel row = fieldRows.get(entry.getKey());
+            if (row == null) {
+                row = new JPanel(new FlowLayout(FlowLayout.LEFT));
+                row.add(new JLabel());
+                fieldRows.put(entry.getKey(), row);
+                fieldsPanel.add(row);
+                fieldsPanel.revalidate();
+            }
             String status = entry.getValue().isBeingStocked() ? "Stocking" : "Ready";
-            JLabel label = new JLabel(entry.getKey() + ": " + entry.getValue().animalCount() + " animals (" + status + ")");
-
-            fieldPanel.setBackground(getStatusColor(status, entry.getValue().animalCount()));
-
-            fieldPanel.add(label);
-            fieldsPanel.add(fieldPanel);
+            ((JLabel) row.getComponent(0)).setText(entry.getKey() + ": " + entry.getValue().animalCount() + " animals (" + status + ")");
+            row.setBackground(getStatusColor(status, entry.getValue().animalCount()));
         }
-        fieldsPanel.revalidate();
-        fieldsPanel.repaint();
     }
 
     private void updateFarmers() {
-        farmersPanel.removeAll();
-        for (Map.Entry<String, String> entry : worldState.getFarmerActivities().entrySet()) {
-            JPanel farmerPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
-            JLabel label = new JLabel(entry.getKey() + ": " + entry.getValue());
-
-            farmerPanel.setBackground(getStatusColor(entry.getValue()));
-
-            farmerPanel.add(label);
-            farmersPanel.add(farmerPanel);
-        }
-        farmersPanel.revalidate();
-        farmersPanel.repaint();
+        farmersModel.refresh();
     }
 
     private void updateBuyers() {
-        buyersPanel.removeAll();
-        for (Map.Entry<String, String> entry : worldState.getBuyerActivities().entrySet()) {
-            JPanel buyerPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
-            JLabel label = new JLabel(entry.getKey() + ": " + entry.getValue());
-
-            buyerPanel.setBackground(getStatusColor(entry.getValue()));
-
-            buyerPanel.add(label);
-            buyersPanel.add(buyerPanel);
-        }
-        buyersPanel.revalidate();
-        buyersPanel.repaint();
+        buyersModel.refresh();
     }
 
     // Keeps track of what should be displayed inside the enclosure panel of the GUI
-    private void updateEnclosure() {
-        enclosurePanel.removeAll();
-        enclosurePanel.setLayout(new FlowLayout(FlowLayout.CENTER, 20, 10));
-        enclosurePanel.setBorder(javax.swing.BorderFactory.createEmptyBorder(10, 10, 10, 10));
-        enclosurePanel.setBackground(new Color(240, 240, 250));
-
+    private void updateEnclosure(WorldState.Snapshot snapshot) {
         boolean hasAnimals = false;
-
-        for (Map.Entry<String, Integer> entry : worldState.getEnclosureState().entrySet()) {
-            if (entry.getValue() > 0) {
-                JPanel animalPanel = new JPanel();
-                animalPanel.setBorder(javax.swing.BorderFactory.createCompoundBorder(
-                    javax.swing.BorderFactory.createLineBorder(new Color(180, 180, 220), 1, true),
-                    javax.swing.BorderFactory.createEmptyBorder(8, 12, 8, 12)
-                ));
-                animalPanel.setBackground(new Color(230, 240, 255));
-
-                JLabel animalLabel = new JLabel(entry.getKey() + ": " + entry.getValue());
-                animalLabel.setFont(new Font("Arial", Font.BOLD, 14));
-                animalPanel.add(animalLabel);
-                enclosurePanel.add(animalPanel);
+        for (AnimalType type : AnimalType.values()) {
+            int count = snapshot.enclosureCount(type);
+            enclosureChips[type.ordinal()].setVisible(count > 0);
+            if (count > 0) {
+                enclosureLabels[type.ordinal()].setText(type.getName() + ": " + count);
                 hasAnimals = true;
             }
         }
+        emptyEnclosureChip.setVisible(!hasAnimals);
+    }
 
-        if (!hasAnimals) {
-            JPanel emptyPanel = new JPanel();
-            emptyPanel.setBorder(javax.swing.BorderFactory.createCompoundBorder(
-                javax.swing.BorderFactory.createLineBorder(new Color(220, 180, 180), 1, true),
-                javax.swing.BorderFactory.createEmptyBorder(8, 12, 8, 12)
-            ));
-            emptyPanel.setBackground(new Color(255, 230, 230));
-
-            JLabel emptyLabel = new JLabel("Empty");
-            emptyLabel.setFont(new Font("Arial", Font.BOLD, 14));
-            emptyPanel.add(emptyLabel);
-            enclosurePanel.add(emptyPanel);
-        }
+    // A bordered box holding one label, as shown in the enclosure panel
+    private static JPanel createChip(JLabel label, Color border, Color background) {
+        JPanel chip = new JPanel();
+        chip.setBorder(BorderFactory.createCompoundBorder(
+            BorderFactory.createLineBorder(border, 1, true),
+            BorderFactory.createEmptyBorder(8, 12, 8, 12)
+        ));
+        chip.setBackground(background);
+        label.setFont(new Font("Arial", Font.BOLD, 14));
+        chip.add(label);
+        return chip;
+    }
 
-        enclosurePanel.revalidate();
-        enclosurePanel.repaint();
+    // Fixed row height so the list never measures rows it is not showing
+    private static JList<String> createActivityList(ActivityListModel model) {
+        JList<String> list = new JList<>(model);
+        list.setFixedCellHeight(26);
+        list.setCellRenderer(new DefaultListCellRenderer() {
+            @Override
+            public Component getListCellRendererComponent(JList<?> list, Object value, int index,
+                                                          boolean isSelected, boolean cellHasFocus) {
+                super.getListCellRendererComponent(list, value, index, isSelected, cellHasFocus);
+                if (!isSelected) {
+                    setBackground(getStatusColor(model.activityAt(index)));
+                }
+                setBorder(BorderFactory.createEmptyBorder(0, 6, 0, 6));
+                return this;
+            }
+        });
+        return list;
     }
     
     private void updateTick() {
         tickLabel.setText("Tick: " + worldState.getCurrentTick());
     }
 
-    // Helper method for color coding based on status/activity - might be worth moving to a utility class
-    private Color getStatusColor(String activity) {
-        if (activity.contains("On break")) {
-            return new Color(255, 182, 193); // Light pink
-        } else if (activity.contains("Walking")) {
-            return new Color(200, 220, 255); // Light blue
-        } else if (activity.contains("Stocking")) {
-            return new Color(255, 220, 200); // Light orange
-        } else if (activity.contains("Waiting") || activity.contains("waiting")) {
-            return new Color(230, 230, 230); // Light gray
-        } else if (activity.contains("Moving")) {
-            return new Color(200, 235, 255); // Light cyan
-        } else if (activity.contains("Returning")) {
-            return new Color(220, 220, 255); // Light lavender
-        } else if (activity.contains("Bought") || activity.contains("bought")) {
-            return new Color(220, 255, 220); // Light green
-        } else {
-            return new Color(255, 255, 200); // Default light yellow
-        }
+    private static final Color BREAK_COLOR = new Color(255, 182, 193);     // Light pink
+    private static final Color STOCKING_COLOR = new Color(255, 220, 200);  // Light orange
+    private static final Color WAITING_COLOR = new Color(230, 230, 230);   // Light gray
+    private static final Color MOVING_COLOR = new Color(200, 235, 255);    // Light cyan
+    private static final Color RETURNING_COLOR = new Color(220, 220, 255); // Light lavender
+    private static final Color BOUGHT_COLOR = new Color(220, 255, 220);    // Light green
+    private static final Color DEFAULT_COLOR = new Color(255, 255, 200);   // Light yellow
+
+    // Helper method for color coding based on the activity code - might be worth moving to a utility class
+    private static Color getStatusColor(Activity activity) {
+        return switch (activity) {
+            case ON_BREAK, ON_BREAK_REMAINING -> BREAK_COLOR;
+            case STOCKING -> STOCKING_COLOR;
+            case WAITING_AT_ENCLOSURE, WAITING_BEING_STOCKED, WAITING_FOR_FIELD -> WAITING_COLOR;
+            case MOVING_TO_FIELD -> MOVING_COLOR;
+            case RETURNING_FROM_BREAK, RETURNING_TO_ENCLOSURE -> RETURNING_COLOR;
+            case BOUGHT -> BOUGHT_COLOR;
+            default -> DEFAULT_COLOR;
+        };
     }
 
     // Overloaded method specifically for field status since it uses different conditions
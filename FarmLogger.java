@@ -1,30 +1,163 @@
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 
 public class FarmLogger {
     private static TickManager tickManager;
-    private static int lastLoggedTick = -1;
+    private static volatile int lastLoggedTick = -1;
+    private static volatile boolean enabled = true; // Event lines are skipped entirely when false
+    private static volatile SimulationConfig config = SimulationConfig.defaults(); // Buffer and log file settings
     private static final String LOG_FILE_PATH = "farm_simulation_log.txt";
+    private static final AnimalType[] DELIVERY_ORDER = AnimalType.inNameOrder();
+
+    // Event lines go through a lock-free ring buffer to a background writer thread, so log
+    // calls never take a global lock or block on terminal I/O. The line format is unchanged.
+    private static volatile AsyncLogWriter eventWriter;
+    private static boolean shutdownHookAdded; // Guarded by FarmLogger.class
+
+    // Use the log settings of config for event output and world-state logs opened from now on
+    public static void configure(SimulationConfig simulationConfig) {
+        config = simulationConfig;
+    }
+
+    // Send event lines to a file instead of stdout (null for stdout) and/or change the policy
+    // applied when the buffer is full. Lines queued to the previous writer are flushed first.
+    public static synchronized void configureEventOutput(String filePath, AsyncLogWriter.Backpressure backpressure) {
+        AsyncLogWriter previous = eventWriter;
+        try {
+            eventWriter = new AsyncLogWriter(config.getLogBufferCapacity(), backpressure, config.getLogSampleRate(), filePath);
+        } catch (java.io.IOException e) {
+            System.err.println("Error opening event log " + filePath + ": " + e.getMessage());
+            return;
+        }
+        if (previous != null) {
+            previous.close();
+        }
+        addShutdownHook();
+    }
+
+    // Make sure queued event lines and the buffered tail of the world-state log reach their
+    // destination when the JVM exits, e.g. on Ctrl-C or when the GUI window is closed
+    private static synchronized void addShutdownHook() {
+        if (!shutdownHookAdded) {
+            shutdownHookAdded = true;
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                flush();
+                closeWorldStateLog();
+            }, "farm-log-flush"));
+        }
+    }
+
+    private static AsyncLogWriter eventWriter() {
+        AsyncLogWriter writer = eventWriter;
+        if (writer == null) {
+            synchronized (FarmLogger.class) {
+                if (eventWriter == null) {
+                    configureEventOutput(null, config.getLogBackpressure());
+                }
+                writer = eventWriter;
+            }
+        }
+        return writer;
+    }
+
+    // In deterministic mode event lines carry the agent id instead of the JVM thread id, which
+    // differs from run to run
+    private static final ThreadLocal<Long> logicalThreadId = new ThreadLocal<>();
+
+    // Called by an agent on its own thread before it logs anything
+    public static void bindAgent(TickManager agentTickManager, int agentId) {
+        if (agentTickManager.getMode() == TickManager.Mode.DETERMINISTIC) {
+            logicalThreadId.set((long) agentId);
+        }
+    }
+
+    // Log the following lines as the given agent, for engines that run many agents on one thread
+    public static void actAs(int agentId) {
+        logicalThreadId.set((long) agentId);
+    }
+
+    private static long threadId() {
+        Long logical = logicalThreadId.get();
+        return (logical != null) ? logical : Thread.currentThread().threadId();
+    }
+
+    private static void emit(String line) {
+        eventWriter().submit(line);
+    }
+
+    // Block until every event logged so far has been written
+    public static void flush() {
+        AsyncLogWriter writer = eventWriter;
+        if (writer != null) {
+            writer.flush();
+        }
+    }
     
+    // World-state snapshots go to a file that stays open for the whole run (see SnapshotLogSink),
+    // either as readable text or in the compact binary format read back by SnapshotReader
+    private static final String BINARY_LOG_FILE_PATH = "farm_simulation_log.bin";
+    private static SnapshotLogSink worldStateSink;
+    private static BinarySnapshotWriter binarySnapshotWriter;
+
     // Initialize log file
-    public static void initializeLogFile() {
+    public static synchronized void initializeLogFile() {
         try {
-            java.nio.file.Files.write(
-                java.nio.file.Paths.get(LOG_FILE_PATH), 
-                ("Farm Simulation Log - Started at " + 
-                java.time.LocalDateTime.now().format(java.time.format.DateTimeFormatter.ISO_LOCAL_DATE_TIME) + "\n").getBytes(),
-                java.nio.file.StandardOpenOption.CREATE, 
-                java.nio.file.StandardOpenOption.TRUNCATE_EXISTING);
+            closeWorldStateLog();
+            addShutdownHook();
+            SimulationConfig settings = config;
+            if (settings.isSnapshotBinary()) {
+                // Not rotated: the reader needs the whole history to seek within one file
+                binarySnapshotWriter = new BinarySnapshotWriter(new SnapshotLogSink(BINARY_LOG_FILE_PATH,
+                        settings.getSnapshotBufferBytes(), Long.MAX_VALUE, 0, settings.getSnapshotFlushMillis()));
+                return;
+            }
+            worldStateSink = new SnapshotLogSink(LOG_FILE_PATH, settings.getSnapshotBufferBytes(),
+                    settings.getSnapshotMaxBytes(), settings.getSnapshotMaxFiles(), settings.getSnapshotFlushMillis());
+            if (settings.isDeterministic() && settings.hasSeed()) {
+                // No start time, so that runs with the same seed give identical logs
+                worldStateSink.write("Farm Simulation Log - Seed " + settings.getSeed() + "\n");
+            } else {
+                worldStateSink.write("Farm Simulation Log - Started at " +
+                    java.time.LocalDateTime.now().format(java.time.format.DateTimeFormatter.ISO_LOCAL_DATE_TIME) + "\n");
+            }
         } catch (java.io.IOException e) {
             System.err.println("Error initializing log file: " + e.getMessage());
         }
     }
+
+    // Flush and close the world-state log, called when the simulation stops
+    public static synchronized void closeWorldStateLog() {
+        try {
+            if (worldStateSink != null) {
+                worldStateSink.close();
+            }
+            if (binarySnapshotWriter != null) {
+                binarySnapshotWriter.close();
+            }
+        } catch (java.io.IOException e) {
+            System.err.println("Error closing log file: " + e.getMessage());
+        }
+        worldStateSink = null;
+        binarySnapshotWriter = null;
+    }
     
     // Method to log world state to file
-    public static synchronized void logWorldState(int currentTick, Map<String, Integer> enclosureState,
+    // Activities arrive as packed codes; only the text format needs them rendered to strings
+    public static synchronized void logWorldState(WorldState.Snapshot snapshot) {
+        try {
+            if (binarySnapshotWriter != null) {
+                binarySnapshotWriter.append(snapshot);
+            } else if (worldStateSink != null) {
+                worldStateSink.write(formatWorldState(snapshot.tick(), snapshot.enclosureState(),
+                        snapshot.fieldStates(), snapshot.farmers().render(snapshot::fieldName),
+                        snapshot.buyers().render(snapshot::fieldName)));
+            }
+        } catch (java.io.IOException e) {
+            System.err.println("Error writing to log file: " + e.getMessage());
+        }
+    }
+
+    // Text form of one tick's world state, as written to farm_simulation_log.txt
+    public static StringBuilder formatWorldState(int currentTick, Map<String, Integer> enclosureState,
                                                  Map<String, WorldState.FieldState> fieldStates,
                                                  Map<String, String> farmerActivities,
                                                  Map<String, String> buyerActivities) {
@@ -60,45 +193,41 @@ public class FarmLogger {
             sb.append("  ").append(entry.getKey()).append(": ")
               .append(entry.getValue()).append("\n");
         }
-        
-        try (java.io.BufferedWriter writer = new java.io.BufferedWriter(new java.io.FileWriter(LOG_FILE_PATH, true))) {
-            writer.write(sb.toString());
-        } catch (java.io.IOException e) {
-            System.err.println("Error writing to log file: " + e.getMessage());
-        }
+
+        return sb;
     }
     
+    // Turn event logging on or off for the whole process, e.g. off for batch experiments where
+    // many farms run at once and nobody reads their events
+    public static void setEnabled(boolean enable) {
+        enabled = enable;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
     public static void setTickManager(TickManager manager) {
         tickManager = manager;
     }
     
     /**
-     * Formats a list of animals into a readable string showing counts of each animal type.
-     * @param animals List of animals to format
+     * Formats a delivery into a readable string showing counts of each animal type.
+     * @param animals Count per AnimalType
      * @return Formatted string representation (e.g., "cows=3 pigs=2")
      */
-    public static String formatDelivery(List<String> animals) {
-        // Count occurrences of each animal type
-        Map<String, Integer> counts = new HashMap<>();
-        for (String animal : animals) {
-            counts.put(animal, counts.getOrDefault(animal, 0) + 1);
-        }
-        
+    public static String formatDelivery(int[] animals) {
         StringBuilder sb = new StringBuilder();
         boolean first = true;
         
-        // Sort animal types alphabetically for consistent output
-        List<String> sortedTypes = new ArrayList<>(counts.keySet());
-        Collections.sort(sortedTypes);
-        
-        // Build the output string
-        for (String type : sortedTypes) {
-            int count = counts.get(type);
+        // Animal types are listed alphabetically for consistent output
+        for (AnimalType type : DELIVERY_ORDER) {
+            int count = animals[type.ordinal()];
             if (count > 0) {
                 if (!first) {
                     sb.append(" ");
                 }
-                sb.append(type).append("=").append(count);
+                sb.append(type.getName()).append("=").append(count);
                 first = false;
             }
         }
@@ -106,107 +235,128 @@ public class FarmLogger {
         return sb.toString();
     }
     
-    public static synchronized void logDelivery(String formattedAnimals) {
+    public static void logDelivery(String formattedAnimals) {
+        if (!enabled) return;
         int tickCount = tickManager.getCurrentTick();
         checkAndLogTickHeader(tickCount);
         
-        long threadId = Thread.currentThread().threadId();
-        System.out.println(tickCount + " " + threadId + " delivery_arrived : " + formattedAnimals);
+        long threadId = threadId();
+        emit(tickCount + " " + threadId + " delivery_arrived : " + formattedAnimals);
     }
     
-    public static synchronized void logBuyerCollection(String buyerName, String fieldName, int waitedTicks) {
+    public static void logBuyerCollection(String buyerName, String fieldName, int waitedTicks) {
+        if (!enabled) return;
         int tickCount = tickManager.getCurrentTick();
         checkAndLogTickHeader(tickCount);
         
-        long threadId = Thread.currentThread().threadId();
+        long threadId = threadId();
         
         if (waitedTicks > 0) {
-            System.out.println(tickCount + " " + threadId + " buyer=" + buyerName + 
+            emit(tickCount + " " + threadId + " buyer=" + buyerName + 
                     " collected_from_field=" + fieldName + " waited_ticks=" + waitedTicks);
         } else {
-            System.out.println(tickCount + " " + threadId + " buyer=" + buyerName + 
+            emit(tickCount + " " + threadId + " buyer=" + buyerName + 
                     " collected_from_field=" + fieldName);
         }
     }
     
-    public static synchronized void logBuyerWaiting(String buyerName, String fieldName, String reason) {
+    public static void logBuyerWaiting(String buyerName, String fieldName, String reason) {
+        if (!enabled) return;
         int tickCount = tickManager.getCurrentTick();
         checkAndLogTickHeader(tickCount);
         
-        long threadId = Thread.currentThread().threadId();
-        System.out.println(tickCount + " " + threadId + " buyer=" + buyerName + 
+        long threadId = threadId();
+        emit(tickCount + " " + threadId + " buyer=" + buyerName + 
                 " waiting_for_field=" + fieldName + " reason=" + reason);
     }
     
-    public static synchronized void logBuyerGaveUp(String buyerName, String fieldName, int waitedTicks) {
+    public static void logBuyerGaveUp(String buyerName, String fieldName, int waitedTicks) {
+        if (!enabled) return;
         int tickCount = tickManager.getCurrentTick();
         checkAndLogTickHeader(tickCount);
         
-        long threadId = Thread.currentThread().threadId();
-        System.out.println(tickCount + " " + threadId + " buyer=" + buyerName + 
+        long threadId = threadId();
+        emit(tickCount + " " + threadId + " buyer=" + buyerName + 
                 " gave_up_waiting for " + fieldName + " after " + waitedTicks + " ticks");
     }
     
-    public static synchronized void logFarmerCollection(String farmerName, int animalCount) {
+    public static void logFarmerCollection(String farmerName, int animalCount) {
+        if (!enabled) return;
         int tickCount = tickManager.getCurrentTick();
         checkAndLogTickHeader(tickCount);
         
-        long threadId = Thread.currentThread().threadId();
-        System.out.println(tickCount + " " + threadId + " farmer=" + farmerName + 
+        long threadId = threadId();
+        emit(tickCount + " " + threadId + " farmer=" + farmerName + 
                 " took " + animalCount + " animals from the enclosure.");
     }
     
-    public static synchronized void logFarmerBeginStocking(String farmerName, String fieldName, int count) {
+    public static void logFarmerBeginStocking(String farmerName, String fieldName, int count) {
+        if (!enabled) return;
         int tickCount = tickManager.getCurrentTick();
         checkAndLogTickHeader(tickCount);
         
-        long threadId = Thread.currentThread().threadId();
-        System.out.println(tickCount + " " + threadId + " farmer=" + farmerName + 
+        long threadId = threadId();
+        emit(tickCount + " " + threadId + " farmer=" + farmerName + 
                 " began_stocking_field : " + fieldName + "=" + count);
     }
     
-    public static synchronized void logFarmerFinishStocking(String farmerName, String fieldName, int count) {
+    public static void logFarmerFinishStocking(String farmerName, String fieldName, int count) {
+        if (!enabled) return;
         int tickCount = tickManager.getCurrentTick();
         checkAndLogTickHeader(tickCount);
         
-        long threadId = Thread.currentThread().threadId();
-        System.out.println(tickCount + " " + threadId + " farmer=" + farmerName + 
+        long threadId = threadId();
+        emit(tickCount + " " + threadId + " farmer=" + farmerName + 
                 " finished_stocking_field : " + fieldName + "=" + count);
     }
     
-    public static synchronized void logFarmerMoving(String farmerName, String fieldName, int movementTime, int animalCount) {
+    public static void logFarmerMoving(String farmerName, String fieldName, int movementTime, int animalCount) {
+        if (!enabled) return;
         int tickCount = tickManager.getCurrentTick();
         checkAndLogTickHeader(tickCount);
         
-        long threadId = Thread.currentThread().threadId();
-        System.out.println(tickCount + " " + threadId + " farmer=" + farmerName + 
+        long threadId = threadId();
+        emit(tickCount + " " + threadId + " farmer=" + farmerName + 
                 " moving_to_field=" + fieldName + " time=" + movementTime + " animals=" + animalCount);
     }
     
-    public static synchronized void logFarmerReturning(String farmerName, int returnTime) {
+    public static void logFarmerReturning(String farmerName, int returnTime) {
+        if (!enabled) return;
         int tickCount = tickManager.getCurrentTick();
         checkAndLogTickHeader(tickCount);
         
-        long threadId = Thread.currentThread().threadId();
-        System.out.println(tickCount + " " + threadId + " farmer=" + farmerName + 
+        long threadId = threadId();
+        emit(tickCount + " " + threadId + " farmer=" + farmerName + 
                 " returning_to_enclosure time=" + returnTime);
     }
     
-    public static synchronized void logFarmerBreak(String farmerName, int duration) {
+    public static void logFarmerReturnedAnimals(String farmerName, int animalCount) {
+        if (!enabled) return;
+        int tickCount = tickManager.getCurrentTick();
+        checkAndLogTickHeader(tickCount);
+        
+        long threadId = threadId();
+        emit(tickCount + " " + threadId + " farmer=" + farmerName + 
+                " returned_animals_to_enclosure animals=" + animalCount);
+    }
+    
+    public static void logFarmerBreak(String farmerName, int duration) {
+        if (!enabled) return;
         int tickCount = tickManager.getCurrentTick();
         checkAndLogTickHeader(tickCount);
         
-        long threadId = Thread.currentThread().threadId();
-        System.out.println(tickCount + " " + threadId + " farmer=" + farmerName + 
+        long threadId = threadId();
+        emit(tickCount + " " + threadId + " farmer=" + farmerName + 
                 " taking_break duration=" + duration);
     }
     
-    public static synchronized void logFarmerBreakEnded(String farmerName) {
+    public static void logFarmerBreakEnded(String farmerName) {
+        if (!enabled) return;
         int tickCount = tickManager.getCurrentTick();
         checkAndLogTickHeader(tickCount);
         
-        long threadId = Thread.currentThread().threadId();
-        System.out.println(tickCount + " " + threadId + " farmer=" + farmerName + " break_ended");
+        long threadId = threadId();
+        emit(tickCount + " " + threadId + " farmer=" + farmerName + " break_ended");
     }
     
     private static void checkAndLogTickHeader(int currentTick) {
@@ -215,13 +365,15 @@ public class FarmLogger {
         }
     }
     
-    public static synchronized void logPaused(int tickCount) {
+    public static void logPaused(int tickCount) {
+        if (!enabled) return;
         checkAndLogTickHeader(tickCount);
-        System.out.println("Simulation paused at tick: " + tickCount);
+        emit("Simulation paused at tick: " + tickCount);
     }
     
-    public static synchronized void logResumed(int tickCount) {
+    public static void logResumed(int tickCount) {
+        if (!enabled) return;
         checkAndLogTickHeader(tickCount);
-        System.out.println("Simulation resumed at tick: " + tickCount);
+        emit("Simulation resumed at tick: " + tickCount);
     }
 }
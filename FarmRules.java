@@ -0,0 +1,59 @@
+import java.util.List;
+import java.util.random.RandomGenerator;
+
+// The decisions farmers, buyers and the delivery manager make, shared by the thread-per-agent
+// agents (Farmer, Buyer, DeliveryManager) and the state machines of the EventLoopEngine, so
+// both engines simulate the same farm. Every random draw goes through the agent's own stream.
+final class FarmRules {
+    private FarmRules() {
+    }
+
+    // Whether a farmer who is not on a break starts one this tick
+    static boolean startsBreak(SimulationConfig config, RandomGenerator random) {
+        return random.nextInt(100) < config.getFarmerBreakChance();
+    }
+
+    static int breakDuration(SimulationConfig config, RandomGenerator random) {
+        return config.getFarmerBreakMinDuration()
+                + random.nextInt(config.getFarmerBreakMaxDuration() - config.getFarmerBreakMinDuration() + 1);
+    }
+
+    // Ticks to walk from the enclosure or a field to the next field carrying count animals
+    static int walkTicks(SimulationConfig config, int count) {
+        return config.getWalkBaseTicks() + config.getWalkTicksPerAnimal() * count;
+    }
+
+    // How many of count animals fit into the field
+    static int stockable(Field field, int count) {
+        return Math.min(count, field.getCapacity() - field.getCurrentCount());
+    }
+
+    // The animal types present in the load, in the order their fields should be stocked by the
+    // farm's policy, ranked from one snapshot of the fields
+    static List<AnimalType> stockingOrder(Farm farm, int[] load) {
+        StockingPolicy.FieldSnapshot fields = farm.getWorldState().fieldSnapshot(farm.getConfig().getFieldCapacity());
+        return farm.getStockingPolicy().order(load, fields, farm.getConfig());
+    }
+
+    // The field a buyer goes to next, or null if the farm has none. The visit feeds the demand
+    // forecast of the fields (see WorldState.fieldSnapshot).
+    static Field pickField(Farm farm, RandomGenerator random) {
+        List<Field> fields = farm.getFields();
+        if (fields.isEmpty()) return null;
+        Field field = fields.get(random.nextInt(fields.size()));
+        farm.getWorldState().buyerVisitsField(field.getId());
+        return field;
+    }
+    // Ticks a buyer pauses after buying
+    static int cooldownTicks(int maxCooldown, RandomGenerator random) {
+        return random.nextInt(maxCooldown) + 1;
+    }
+
+    // The delivery arriving this tick, or null if there is none
+    static int[] delivery(SimulationConfig config, RandomGenerator random) {
+        if (random.nextInt(config.getDeliveryFrequency()) != 0) {
+            return null;
+        }
+        return DeliveryManager.generateDelivery(random, config.getDeliverySize());
+    }
+}
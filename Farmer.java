@@ -1,51 +1,71 @@
-import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
-import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.LongAdder;
 
 // Represents a farmer in the farm simulation.
 // A Farmer will collect animals from the enclosure and stock them into fields.
-class Farmer extends Thread {
+class Farmer implements Runnable {
+    static final int MAX_RECORDED_FIELD_WAIT = 1024; // Longer waits for a field count as this
+
     private final Farm farm;
     private final String farmerName;
-    private final WorldState worldState = WorldState.getInstance();
+    private final int farmerId; // Slot in WorldState's activity table
+    private final WorldState worldState;
     private final TickManager tickManager;
+    private final SimulationConfig config;
+    private final int agentId;
     private int lastCheckedTick = 0;
-    private final Random random = new Random();
+    private final SplittableRandom random;
     private boolean onBreak = false;
     private int breakCounter = 0;
+    private final TickHistogram loadSizes;  // Animals taken per trip
+    private final TickHistogram fieldWaits; // Ticks from reaching a field until it could be stocked
+    private final LongAdder animalsReturned; // Animals carried back to the enclosure unstocked
 
     // Constructor to initialize the Farmer
     public Farmer(Farm farm, String farmerName, TickManager tickManager) {
         this.farm = farm;
         this.farmerName = farmerName;
+        this.worldState = farm.getWorldState();
+        this.random = farm.newRandom();
+        this.config = farm.getConfig();
+        this.farmerId = worldState.registerFarmer(farmerName);
         this.tickManager = tickManager;
+        this.agentId = tickManager.registerAgent();
+        this.loadSizes = worldState.getMetrics().histogram("farmer.load", config.getFarmerMaxAnimals());
+        this.fieldWaits = worldState.getMetrics().histogram("farmer.field_wait", MAX_RECORDED_FIELD_WAIT);
+        this.animalsReturned = worldState.getMetrics().counter("farmer.animals_returned");
+    }
+
+    // Start the farmer on a platform or virtual thread, depending on AgentRuntime
+    public Thread start() {
+        return AgentRuntime.start("farmer-" + farmerName, this);
     }
 
     @Override
     public void run() {
+        FarmLogger.bindAgent(tickManager, agentId);
         try {
             while (!Thread.interrupted()) {
                 // Wait for a tick
                 waitForNextTick();
 
-                // 5% chance the farmer decides to take a break
-                if (!onBreak && random.nextInt(100) < Config.FARMER_BREAK_CHANCE) {
+                // 5% chance (by default) the farmer decides to take a break
+                if (!onBreak && FarmRules.startsBreak(config, random)) {
                     onBreak = true;
-                    breakCounter = Config.FARMER_BREAK_MIN_DURATION + random.nextInt(Config.FARMER_BREAK_MAX_DURATION - Config.FARMER_BREAK_MIN_DURATION + 1);
-                    worldState.updateFarmerActivity(farmerName, "On break for " + breakCounter + " ticks");
+                    breakCounter = FarmRules.breakDuration(config, random);
+                    worldState.updateFarmerActivity(farmerId, Activity.ON_BREAK, Activity.NO_FIELD, breakCounter);
                     FarmLogger.logFarmerBreak(farmerName, breakCounter);
                     continue;
                 }
 
                 // If on break, decrement the break counter
                 if (onBreak) {
-                    worldState.updateFarmerActivity(farmerName, "On break for " + breakCounter + " more ticks");
+                    worldState.updateFarmerActivity(farmerId, Activity.ON_BREAK_REMAINING, Activity.NO_FIELD, breakCounter);
                     breakCounter--;
                     if (breakCounter <= 0) {
                         onBreak = false;
-                        worldState.updateFarmerActivity(farmerName, "Returning from break");
+                        worldState.updateFarmerActivity(farmerId, Activity.RETURNING_FROM_BREAK);
                         FarmLogger.logFarmerBreakEnded(farmerName);
                     } else {
                         continue; // Skip the rest of the loop if still on break
@@ -53,132 +73,107 @@ class Farmer extends Thread {
                 }
 
                 // Update status while waiting at enclosure
-                worldState.updateFarmerActivity(farmerName, "Waiting at enclosure");
+                worldState.updateFarmerActivity(farmerId, Activity.WAITING_AT_ENCLOSURE);
 
                 if (farm.hasAnimalsInEnclosure()) {
-                    // Take animals from enclosure
-                    List<String> animals = farm.takeFromEnclosure(Config.FARMER_MAX_ANIMALS);
-                    
-                    if (!animals.isEmpty()) {
-                        FarmLogger.logFarmerCollection(farmerName, animals.size());
+                    // Take animals from enclosure; never blocks, empty if another farmer got there first
+                    int[] animals = farm.takeFromEnclosure(config.getFarmerMaxAnimals());
+
+                    int taken = AnimalType.total(animals);
+                    if (taken > 0) {
+                        loadSizes.record(taken);
+                        FarmLogger.logFarmerCollection(farmerName, taken);
                         stockAnimals(animals);
                     }
                 }
             }
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
+        } finally {
+            tickManager.deregisterAgent(agentId);
         }
     }
 
     // Wait for the next simulation tick
     private void waitForNextTick() throws InterruptedException {
-        lastCheckedTick = tickManager.waitForNextTick(lastCheckedTick);
+        lastCheckedTick = tickManager.waitForNextTick(agentId, lastCheckedTick);
     }
 
-    // Stock animals into fields
-    private void stockAnimals(List<String> animals) throws InterruptedException {
-        // Group animals by type
-        Map<String, Integer> animalCounts = countAnimalsByType(animals);
-
-        // Sort fields by priority using the extracted method
-        List<Map.Entry<String, Integer>> sortedAnimals = getSortedAnimals(animalCounts);
-
-        // Current location of the farmer
-        String currentLocation = "enclosure";
-
-        for (Map.Entry<String, Integer> entry : sortedAnimals) {
-            String animalType = entry.getKey();
-            int count = entry.getValue();
+    // Stock animals into fields; load holds a count per AnimalType. Every leg is walked carrying
+    // all the animals not yet stocked, and those that found no room go back to the enclosure.
+    private void stockAnimals(int[] load) throws InterruptedException {
+        // The fields to visit, in the farm's stocking order
+        List<AnimalType> route = FarmRules.stockingOrder(farm, load);
+        int[] carried = load.clone();
 
-            Field field = findSuitableField(animalType);
-            if (field == null) continue;
+        for (AnimalType animalType : route) {
+            int count = carried[animalType.ordinal()];
+            Field field = farm.getField(animalType);
 
             // Calculate movement time
-            int movementTime = 10 + count; // Base time + 1 per animal
+            int carrying = AnimalType.total(carried);
+            int movementTime = FarmRules.walkTicks(config, carrying); // Base time + 1 per animal by default
 
             // Update farmer activity - moving to field
-            worldState.updateFarmerActivity(farmerName, "Moving to " + field.getName() + " with " + count + " animals");
-            FarmLogger.logFarmerMoving(farmerName, field.getName(), movementTime, count);
+            worldState.updateFarmerActivity(farmerId, Activity.MOVING_TO_FIELD, field.getId(), carrying);
+            FarmLogger.logFarmerMoving(farmerName, field.getName(), movementTime, carrying);
             waitForTicks(movementTime);
 
-            try {
-                field.startStocking();
+            int arrivedTick = tickManager.getCurrentTick();
+            if (tickManager.getMode() == TickManager.Mode.DETERMINISTIC) {
+                // A farmer woken from startStocking would run alongside the one holding the turn,
+                // so wait for the field a tick at a time instead
+                while (!field.tryStartStocking()) {
+                    waitForNextTick();
+                }
+            } else {
+                // Another farmer may be stocking this field, which does not hold the clock back
+                tickManager.beginBlocking();
+                try {
+                    field.startStocking();
+                } finally {
+                    tickManager.endBlocking();
+                }
+            }
+            fieldWaits.record(tickManager.getCurrentTick() - arrivedTick);
 
+            try {
                 // Update farmer activity - stocking field
-                worldState.updateFarmerActivity(farmerName, "Stocking " + field.getName() + " with " + count + " animals");
+                worldState.updateFarmerActivity(farmerId, Activity.STOCKING, field.getId(), count);
                 FarmLogger.logFarmerBeginStocking(farmerName, field.getName(), count);
 
-                int toStock = Math.min(count, field.getCapacity() - field.getCurrentCount());
+                int toStock = FarmRules.stockable(field, count);
                 waitForTicks(toStock);
 
                 field.addAnimals(toStock);
+                carried[animalType.ordinal()] -= toStock;
 
-                worldState.updateFarmerActivity(farmerName, "Finished stocking " + field.getName());
+                worldState.updateFarmerActivity(farmerId, Activity.FINISHED_STOCKING, field.getId(), 0);
                 FarmLogger.logFarmerFinishStocking(farmerName, field.getName(), toStock);
-                currentLocation = field.getName();
+                worldState.getStats().recordStocked(toStock);
             } finally {
                 field.finishStocking();
             }
         }
 
         // Return to enclosure if not already there
-        if (!currentLocation.equals("enclosure")) {
-            worldState.updateFarmerActivity(farmerName, "Returning to enclosure");
-            int returnTime = 10;
+        if (!route.isEmpty()) {
+            worldState.updateFarmerActivity(farmerId, Activity.RETURNING_TO_ENCLOSURE);
+            int returnTime = config.getReturnTicks();
             FarmLogger.logFarmerReturning(farmerName, returnTime);
             waitForTicks(returnTime);
         }
-    }
-
-    // Wait for the specified number of ticks
-    private void waitForTicks(int ticksToWait) throws InterruptedException {
-        int targetTick = lastCheckedTick + ticksToWait;
-        while (lastCheckedTick < targetTick) {
-            waitForNextTick();
-        }
-    }
-
-    // Find a suitable field for the given animal type
-    private Field findSuitableField(String animal) {
-        for (Field f : farm.getFields()) {
-            if (f.getName().equalsIgnoreCase(animal)) {
-                return f;
-            }
-        }
-        return null;
-    }
-
-    // Count the number of animals by type
-    private Map<String, Integer> countAnimalsByType(List<String> animals) {
-        Map<String, Integer> counts = new HashMap<>();
-        for (String animal : animals) {
-            counts.put(animal, counts.getOrDefault(animal, 0) + 1);
+        int returned = AnimalType.total(carried);
+        if (returned > 0) {
+            farm.addToEnclosure(carried);
+            animalsReturned.add(returned);
+            FarmLogger.logFarmerReturnedAnimals(farmerName, returned);
         }
-        return counts;
     }
 
-    private List<Map.Entry<String, Integer>> getSortedAnimals(Map<String, Integer> animalCounts) {
-        List<Map.Entry<String, Integer>> sortedAnimals = new ArrayList<>(animalCounts.entrySet());
-        sortedAnimals.sort((a, b) -> {
-            Field fieldA = findSuitableField(a.getKey());
-            Field fieldB = findSuitableField(b.getKey());
-
-            // Priority: fields with waiting buyers
-            boolean aHasWaiting = worldState.hasWaitingBuyers(a.getKey());
-            boolean bHasWaiting = worldState.hasWaitingBuyers(b.getKey());
-
-            if (aHasWaiting && !bHasWaiting) return -1;
-            if (!aHasWaiting && bHasWaiting) return 1;
-
-            // Priority: fields with the lowest stock ratio
-            if (fieldA != null && fieldB != null) {
-                double aRatio = (double) fieldA.getCurrentCount() / fieldA.getCapacity();
-                double bRatio = (double) fieldB.getCurrentCount() / fieldB.getCapacity();
-                return Double.compare(aRatio, bRatio);
-            }
-
-            return 0;
-        });
-        return sortedAnimals;
+    // Wait for the specified number of ticks (parked until then, not woken every tick)
+    private void waitForTicks(int ticksToWait) throws InterruptedException {
+        if (ticksToWait <= 0) return;
+        lastCheckedTick = tickManager.waitUntilTick(agentId, lastCheckedTick + ticksToWait);
     }
 }
@@ -0,0 +1,154 @@
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+// A farmer for the EventLoopEngine: the same behaviour as Farmer, written as a state machine.
+// Every point where Farmer waits for the clock is a state here, and step() runs from one such
+// point to the next, so both engines make the same decisions in the same order.
+class FarmerStateMachine implements EventLoopEngine.Agent {
+    private enum State {
+        AT_ENCLOSURE,   // Deciding on a break or taking animals
+        NEXT_FIELD,     // About to walk to the next field of the load (or back)
+        AT_FIELD,       // Arrived, waiting until the field can be stocked
+        STOCKED,        // Finished putting the animals into the field
+        RETURNED        // Back at the enclosure with the animals that found no room
+    }
+
+    private final Farm farm;
+    private final String farmerName;
+    private final int farmerId; // Slot in WorldState's activity table
+    private final WorldState worldState;
+    private final SimulationConfig config;
+    private final SplittableRandom random;
+    private State state = State.AT_ENCLOSURE;
+    private boolean onBreak = false;
+    private int breakCounter = 0;
+    private final TickHistogram loadSizes;  // Animals taken per trip
+    private final TickHistogram fieldWaits; // Ticks from reaching a field until it could be stocked
+    private final LongAdder animalsReturned; // Animals carried back to the enclosure unstocked
+
+    // The load being stocked
+    private int[] carried; // Animals not stocked yet, per AnimalType
+    private List<AnimalType> stockingOrder;
+    private int nextType;
+    private Field field;
+    private int toStock;
+    private int arrivedTick; // When the farmer reaches the field
+
+    public FarmerStateMachine(Farm farm, String farmerName) {
+        this.farm = farm;
+        this.farmerName = farmerName;
+        this.worldState = farm.getWorldState();
+        this.random = farm.newRandom();
+        this.config = farm.getConfig();
+        this.farmerId = worldState.registerFarmer(farmerName);
+        this.loadSizes = worldState.getMetrics().histogram("farmer.load", config.getFarmerMaxAnimals());
+        this.fieldWaits = worldState.getMetrics().histogram("farmer.field_wait", Farmer.MAX_RECORDED_FIELD_WAIT);
+        this.animalsReturned = worldState.getMetrics().counter("farmer.animals_returned");
+    }
+
+    @Override
+    public int step(int tick) {
+        while (true) {
+            switch (state) {
+                case AT_ENCLOSURE:
+                    if (!onBreak && FarmRules.startsBreak(config, random)) {
+                        onBreak = true;
+                        breakCounter = FarmRules.breakDuration(config, random);
+                        worldState.updateFarmerActivity(farmerId, Activity.ON_BREAK, Activity.NO_FIELD, breakCounter);
+                        FarmLogger.logFarmerBreak(farmerName, breakCounter);
+                        return tick + 1;
+                    }
+                    if (onBreak) {
+                        worldState.updateFarmerActivity(farmerId, Activity.ON_BREAK_REMAINING, Activity.NO_FIELD, breakCounter);
+                        breakCounter--;
+                        if (breakCounter > 0) {
+                            return tick + 1;
+                        }
+                        onBreak = false;
+                        worldState.updateFarmerActivity(farmerId, Activity.RETURNING_FROM_BREAK);
+                        FarmLogger.logFarmerBreakEnded(farmerName);
+                    }
+                    worldState.updateFarmerActivity(farmerId, Activity.WAITING_AT_ENCLOSURE);
+                    if (!farm.hasAnimalsInEnclosure()) {
+                        return tick + 1;
+                    }
+                    carried = farm.takeFromEnclosure(config.getFarmerMaxAnimals());
+                    int taken = AnimalType.total(carried);
+                    if (taken == 0) {
+                        return tick + 1;
+                    }
+                    loadSizes.record(taken);
+                    FarmLogger.logFarmerCollection(farmerName, taken);
+                    stockingOrder = FarmRules.stockingOrder(farm, carried);
+                    nextType = 0;
+                    state = State.NEXT_FIELD;
+                    break;
+
+                case NEXT_FIELD:
+                    if (nextType == stockingOrder.size()) {
+                        state = State.RETURNED;
+                        if (stockingOrder.isEmpty()) {
+                            break; // Never left the enclosure
+                        }
+                        worldState.updateFarmerActivity(farmerId, Activity.RETURNING_TO_ENCLOSURE);
+                        int returnTime = config.getReturnTicks();
+                        FarmLogger.logFarmerReturning(farmerName, returnTime);
+                        if (returnTime > 0) {
+                            return tick + returnTime;
+                        }
+                        break;
+                    }
+                    AnimalType type = stockingOrder.get(nextType);
+                    field = farm.getField(type);
+                    int carrying = AnimalType.total(carried);
+                    int movementTime = FarmRules.walkTicks(config, carrying);
+                    worldState.updateFarmerActivity(farmerId, Activity.MOVING_TO_FIELD, field.getId(), carrying);
+                    FarmLogger.logFarmerMoving(farmerName, field.getName(), movementTime, carrying);
+                    state = State.AT_FIELD;
+                    arrivedTick = tick + Math.max(movementTime, 0);
+                    if (movementTime > 0) {
+                        return tick + movementTime;
+                    }
+                    break;
+
+                case AT_FIELD:
+                    if (!field.tryStartStocking()) {
+                        return tick + 1; // Another farmer is stocking it
+                    }
+                    fieldWaits.record(tick - arrivedTick);
+                    int count = carried[field.getType().ordinal()];
+                    worldState.updateFarmerActivity(farmerId, Activity.STOCKING, field.getId(), count);
+                    FarmLogger.logFarmerBeginStocking(farmerName, field.getName(), count);
+                    toStock = FarmRules.stockable(field, count);
+                    state = State.STOCKED;
+                    if (toStock > 0) {
+                        return tick + toStock;
+                    }
+                    break;
+
+                case STOCKED:
+                    field.addAnimals(toStock);
+                    carried[field.getType().ordinal()] -= toStock;
+                    worldState.updateFarmerActivity(farmerId, Activity.FINISHED_STOCKING, field.getId(), 0);
+                    FarmLogger.logFarmerFinishStocking(farmerName, field.getName(), toStock);
+                    worldState.getStats().recordStocked(toStock);
+                    field.finishStocking();
+                    nextType++;
+                    state = State.NEXT_FIELD;
+                    break;
+
+                case RETURNED:
+                    // Then wait for the tick after arriving
+                    int returned = AnimalType.total(carried);
+                    if (returned > 0) {
+                        farm.addToEnclosure(carried);
+                        animalsReturned.add(returned);
+                        FarmLogger.logFarmerReturnedAnimals(farmerName, returned);
+                    }
+                    state = State.AT_ENCLOSURE;
+                    return tick + 1;
+            }
+        }
+    }
+}
@@ -1,116 +1,259 @@
-import java.util.concurrent.locks.Condition;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
 
 public class Field {
-    private final String name;
-    private static final int capacity = Config.FIELD_CAPACITY;
-    private int currentCount;
-    private boolean beingStocked = false;
-    private final WorldState worldState = WorldState.getInstance();
-    
-    // ReentrantLock with fairness policy set to true for first in first out ordering
-    private final ReentrantLock lock = new ReentrantLock(true);
-    private final Condition stockingCondition = lock.newCondition();
-    private final Condition animalAvailableCondition = lock.newCondition();
-
-    public Field(String name) {
-        this.name = name;
-        this.currentCount = Config.FIELD_INITIAL_ANIMAL_COUNT;
-    }
-    // Simple getter methods for name, currentCount, and capacity (used primarily by Farmers & Buyers for accurate logging)
-    public String getName() {
-        lock.lock();
-        try {
-            return name;
-        } finally {
-            lock.unlock();
+    // What a buyer found at the field
+    public enum BuyResult {
+        BOUGHT,
+        EMPTY,
+        BEING_STOCKED
+    }
+
+    // What happens to the buyers waiting at a field when it is restocked
+    public enum QueuePolicy {
+        FIFO, // The new animals are handed to the longest-waiting buyers, one each
+        RACE  // Every waiting buyer is woken and whoever comes first buys
+    }
+
+    // A buyer's place in the queue of a field. Guarded by the field's lock, except joined.
+    public static final class Waiter {
+        private final Runnable wakeUp; // Brings the buyer back on the next tick
+        private boolean queued;
+        private boolean handedAnimal;  // FIFO: an animal has been put aside for this buyer
+        private boolean joined;        // Only used by the buyer: it may be queued or handed an animal
+
+        public Waiter(Runnable wakeUp) {
+            this.wakeUp = wakeUp;
         }
     }
 
-    public int getCurrentCount() {
-        lock.lock();
+    private final AnimalType type;
+    private final String name;
+    private final int id; // Index used by WorldState and activity codes: the type's ordinal
+    private final int capacity;
+    private final WorldState worldState;
+
+    // Animal count and being-stocked flag, guarded as field.sync chooses (fair ReentrantLock for
+    // first in first out ordering by default, see FieldSync)
+    private final FieldSync sync;
+    // The buyers waiting for an animal, longest waiting first
+    private final ArrayDeque<Waiter> waitingBuyers = new ArrayDeque<>();
+    private final QueuePolicy queuePolicy;
+    private final LongAdder stockouts; // Times a buyer took the last animal
+
+    public Field(AnimalType type) {
+        this(type, WorldState.getInstance(), SimulationConfig.defaults());
+    }
+
+    public Field(AnimalType type, WorldState worldState, SimulationConfig config) {
+        this.type = type;
+        this.worldState = worldState;
+        this.capacity = config.getFieldCapacity();
+        this.name = type.getName();
+        this.id = type.ordinal();
+        this.queuePolicy = config.getBuyerQueuePolicy();
+        this.sync = FieldSync.create(config.getFieldSync(), "field." + name, worldState.getMetrics());
+        this.stockouts = worldState.getMetrics().counter("field." + name + ".stockouts");
+        sync.lock();
         try {
-            return currentCount;
+            sync.compareAndSet(0, FieldSync.state(config.getFieldInitialAnimalCount(), false));
         } finally {
-            lock.unlock();
+            sync.unlock();
         }
     }
 
+    // Name, type, id and capacity never change, so reading them takes no lock
+    public String getName() {
+        return name;
+    }
+
+    public AnimalType getType() {
+        return type;
+    }
+
+    public int getId() {
+        return id;
+    }
+
     public int getCapacity() {
-        lock.lock();
+        return capacity;
+    }
+
+    // Used primarily by Farmers & Buyers for accurate logging
+    public int getCurrentCount() {
+        return FieldSync.count(sync.readShared());
+    }
+
+    // Adds animals, handing them straight to waiting buyers if they can be bought now
+    public void addAnimals(int count) {
+        List<Runnable> toWake;
+        sync.lock();
         try {
-            return capacity;
+            toWake = update(count, FieldSync.stocking(sync.read()));
         } finally {
-            lock.unlock();
+            sync.unlock();
         }
+        wake(toWake);
     }
 
-    // Using a ReentrantLock to ensure thread safety when adding animals to the field
-    public void addAnimals(int count) {
-        lock.lock();
+    // Waits until no other farmer is stocking, so that only one farmer stocks the field at a time
+    public void startStocking() throws InterruptedException {
+        sync.lock();
         try {
-            currentCount += count;
-            worldState.updateFieldCount(name, currentCount);
-            // Signal all waiting buyers that animals are now available
-            animalAvailableCondition.signalAll();
+            while (FieldSync.stocking(sync.read())) {
+                sync.awaitStockingDone();
+            }
+            update(0, true);
         } finally {
-            lock.unlock();
+            sync.unlock();
         }
     }
 
-    // Uses condition variables to ensure that only one farmer can stock the field at a time
-    public void startStocking() throws InterruptedException {
-        lock.lock();
+    // Starts stocking only if no other farmer is stocking, without waiting
+    public boolean tryStartStocking() {
+        sync.lock();
         try {
-            while (beingStocked) {
-                stockingCondition.await();
+            if (FieldSync.stocking(sync.read())) {
+                return false;
             }
-            beingStocked = true;
-            worldState.updateFieldState(name, currentCount, true);
+            update(0, true);
+            return true;
         } finally {
-            lock.unlock();
+            sync.unlock();
         }
     }
 
     // Used by Farmers and Buyers to check if the field is currently being stocked (to avoid conflicts)
     public boolean isBeingStocked() {
-        lock.lock();
+        return FieldSync.stocking(sync.readShared());
+    }
+
+    // Ends stocking and notifies every farmer waiting to stock the field
+    public void finishStocking() {
+        List<Runnable> toWake;
+        sync.lock();
         try {
-            return beingStocked;
+            toWake = update(0, false); // Waiting buyers might be able to buy now
+            sync.signalStockingDone();
         } finally {
-            lock.unlock();
+            sync.unlock();
         }
+        wake(toWake);
     }
-    
-    // Uses signalAll() to notify all waiting threads that the field is no longer being stocked
-    public void finishStocking() {
-        lock.lock();
+
+    // Buys an animal if one has been handed to this buyer or can be bought right now. Otherwise
+    // the buyer joins the queue and its wake-up runs once the field has been restocked (or has
+    // finished being stocked), so it can park until then instead of asking every tick. Under
+    // FIFO the buyer then finds an animal put aside for it. A buyer that stops waiting must call
+    // cancelWait.
+    public BuyResult tryBuy(Waiter waiter) {
+        if (sync.lockFreeBuying() && !waiter.joined) {
+            // Not queued, so nothing can have been put aside for it: just take an animal
+            if (takeAnimal() >= 0) {
+                publish(sync.readShared());
+                return BuyResult.BOUGHT;
+            }
+        }
+        sync.lock();
         try {
-            beingStocked = false;
-            worldState.updateFieldState(name, currentCount, false);
-            stockingCondition.signalAll();
-            animalAvailableCondition.signalAll(); // Signal waiting buyers that animals might be available now
+            if (waiter.handedAnimal) {
+                waiter.handedAnimal = false; // Already taken off the count
+                waiter.joined = waiter.queued;
+                return BuyResult.BOUGHT;
+            }
+            if (takeAnimal() >= 0) {
+                waiter.joined = waiter.queued;
+                publish(sync.read());
+                return BuyResult.BOUGHT;
+            }
+            if (!waiter.queued) {
+                waiter.queued = true;
+                waitingBuyers.add(waiter);
+            }
+            waiter.joined = true;
+            return FieldSync.stocking(sync.read()) ? BuyResult.BEING_STOCKED : BuyResult.EMPTY;
         } finally {
-            lock.unlock();
+            sync.unlock();
         }
     }
 
-    // Method used by Buyers to attempt to buy an animal from the field
-    public boolean tryRemoveAnimal() {
-        lock.lock();
+    // Leaves the queue. Returns false if an animal has already been handed to this buyer, which
+    // it can still collect with tryBuy.
+    public boolean cancelWait(Waiter waiter) {
+        sync.lock();
         try {
-            if (beingStocked) {
-                return false;
-            }
-            
-            if (currentCount > 0) {
-                currentCount--;
-                worldState.updateFieldCount(name, currentCount);
-                return true;
+            if (waiter.queued) {
+                waiter.queued = false;
+                waitingBuyers.remove(waiter);
             }
-            return false;
+            waiter.joined = waiter.handedAnimal;
+            return !waiter.handedAnimal;
         } finally {
-            lock.unlock();
+            sync.unlock();
+        }
+    }
+
+    // Called in the exclusive section: adds animals and sets the stocking flag and, in the same
+    // step, puts new animals aside for waiting buyers (FIFO), so a buyer buying without the lock
+    // (ATOMIC) cannot take them first. Returns the wake-ups to run after leaving the section.
+    private List<Runnable> update(int added, boolean stocking) {
+        long state;
+        int count;
+        int handed;
+        do {
+            state = sync.read();
+            count = FieldSync.count(state) + added;
+            handed = (!stocking && queuePolicy == QueuePolicy.FIFO) ? Math.min(count, waitingBuyers.size()) : 0;
+        } while (!sync.compareAndSet(state, FieldSync.state(count - handed, stocking)));
+        if (handed > 0 && handed == count) {
+            stockouts.increment();
+        }
+        publish(FieldSync.state(count - handed, stocking));
+
+        if (stocking || count == 0 || waitingBuyers.isEmpty()) {
+            return List.of();
+        }
+        List<Runnable> toWake = new ArrayList<>();
+        while (!waitingBuyers.isEmpty() && (queuePolicy == QueuePolicy.RACE || toWake.size() < handed)) {
+            Waiter waiter = waitingBuyers.poll();
+            waiter.queued = false;
+            if (queuePolicy == QueuePolicy.FIFO) {
+                waiter.handedAnimal = true;
+            }
+            toWake.add(waiter.wakeUp);
+        }
+        return toWake;
+    }
+
+    // Takes one animal if there is one and the field is not being stocked. Returns how many are
+    // left, or -1 if none was taken. In the exclusive section, or outside it if lockFreeBuying.
+    private int takeAnimal() {
+        while (true) {
+            long state = sync.read();
+            int count = FieldSync.count(state);
+            if (FieldSync.stocking(state) || count == 0) {
+                return -1;
+            }
+            if (sync.compareAndSet(state, FieldSync.state(count - 1, false))) {
+                if (count == 1) {
+                    stockouts.increment();
+                }
+                return count - 1;
+            }
+        }
+    }
+
+    // Shows the state in WorldState. Under a lock this is in order; a lock-free buyer may publish
+    // a count that is already one purchase out of date until the next change of the field.
+    private void publish(long state) {
+        worldState.updateFieldState(id, FieldSync.count(state), FieldSync.stocking(state));
+    }
+
+    private static void wake(List<Runnable> toWake) {
+        for (Runnable wakeUp : toWake) {
+            wakeUp.run();
         }
     }
 }
@@ -0,0 +1,295 @@
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.StampedLock;
+
+// How a Field guards its state (field.sync). The state is one long, the animal count in the
+// low 32 bits plus a being-stocked bit, so every strategy changes it the same way and Field's
+// buying and stocking rules are shared; the strategies only differ in what buyers, farmers and
+// readers pay to get at it:
+//   FAIR      a fair ReentrantLock around everything, the original behaviour
+//   NON_FAIR  the same with a barging lock, which trades FIFO lock handover for throughput
+//   STAMPED   a StampedLock: writes are exclusive, getCurrentCount and isBeingStocked are
+//             optimistic reads that never block a buyer or farmer
+//   ATOMIC    the state is an AtomicLong: buyers who are not queued buy with a CAS, readers
+//             read it directly, and only the waiting buyers and stocking take a lock
+abstract class FieldSync {
+    // Which strategy a field uses
+    enum Kind {
+        FAIR,
+        NON_FAIR,
+        STAMPED,
+        ATOMIC
+    }
+
+    static final long STOCKING = 1L << 32;
+
+    static FieldSync create(Kind kind, String name, MetricsRegistry metrics) {
+        return switch (kind) {
+            case FAIR -> new Locked(metrics.newLock(name, true));
+            case NON_FAIR -> new Locked(metrics.newLock(name, false));
+            case STAMPED -> new Stamped(name, metrics);
+            case ATOMIC -> new Atomic(metrics.newLock(name, false));
+        };
+    }
+
+    static int count(long state) {
+        return (int) state;
+    }
+
+    static boolean stocking(long state) {
+        return (state & STOCKING) != 0;
+    }
+
+    static long state(int count, boolean stocking) {
+        return (stocking ? STOCKING : 0) | (count & 0xFFFFFFFFL);
+    }
+
+    // Enter and leave the exclusive section, which every change to the waiting buyers or the
+    // stocking flag happens in
+    abstract void lock();
+
+    abstract void unlock();
+
+    // The state, exact inside the exclusive section
+    abstract long read();
+
+    // Replaces the state if it is still expected. Outside the exclusive section only if
+    // lockFreeBuying(), and only to take an animal.
+    abstract boolean compareAndSet(long expected, long updated);
+
+    // A recent state for a reader outside the exclusive section
+    abstract long readShared();
+
+    // Whether a buyer who is not queued may take an animal with compareAndSet alone
+    boolean lockFreeBuying() {
+        return false;
+    }
+
+    // Inside the exclusive section: leaves it until the next signalStockingDone, then enters it again
+    abstract void awaitStockingDone() throws InterruptedException;
+
+    // Inside the exclusive section: wakes every awaitStockingDone
+    abstract void signalStockingDone();
+
+    // FAIR and NON_FAIR: one ReentrantLock guards the plain state
+    private static final class Locked extends FieldSync {
+        private final ReentrantLock lock;
+        private final Condition stockingDone;
+        private long state;
+
+        Locked(ReentrantLock lock) {
+            this.lock = lock;
+            this.stockingDone = lock.newCondition();
+        }
+
+        @Override
+        void lock() {
+            lock.lock();
+        }
+
+        @Override
+        void unlock() {
+            lock.unlock();
+        }
+
+        @Override
+        long read() {
+            return state;
+        }
+
+        @Override
+        boolean compareAndSet(long expected, long updated) {
+            if (state != expected) {
+                return false;
+            }
+            state = updated;
+            return true;
+        }
+
+        @Override
+        long readShared() {
+            lock.lock();
+            try {
+                return state;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        void awaitStockingDone() throws InterruptedException {
+            stockingDone.await();
+        }
+
+        @Override
+        void signalStockingDone() {
+            stockingDone.signalAll();
+        }
+    }
+
+    // STAMPED: writes under the write lock, reads optimistic. A StampedLock has no conditions,
+    // so farmers waiting for the field wait on a separate lock for a change of stockingRounds.
+    // With lock timing on, the write lock is timed as the field's lock, like the other kinds'
+    // TimedLock; optimistic and read-locked reads are not.
+    private static final class Stamped extends FieldSync {
+        private final StampedLock lock = new StampedLock();
+        private final ReentrantLock waitLock = new ReentrantLock();
+        private final Condition stockingDone = waitLock.newCondition();
+        private final AtomicInteger writersWaiting = new AtomicInteger();
+        private final LockStats stats;           // Null unless lock timing is on
+        private long writeStamp;                 // Only used by the writer
+        private long holdStart;                  // Only used by the writer
+        private volatile long stockingRounds;    // Incremented by every signalStockingDone
+        private long state;
+
+        Stamped(String name, MetricsRegistry metrics) {
+            this.stats = metrics.newLockStats(name, false, writersWaiting::get);
+        }
+
+        @Override
+        void lock() {
+            if (stats == null) {
+                writeStamp = lock.writeLock();
+                return;
+            }
+            long start = System.nanoTime();
+            long stamp = lock.tryWriteLock();
+            int queued = 0;
+            boolean contended = stamp == 0;
+            if (contended) {
+                queued = writersWaiting.getAndIncrement();
+                try {
+                    stamp = lock.writeLock();
+                } finally {
+                    writersWaiting.decrementAndGet();
+                }
+            }
+            long now = System.nanoTime();
+            stats.recordAcquire(now - start, queued, contended);
+            writeStamp = stamp;
+            holdStart = now;
+        }
+
+        @Override
+        void unlock() {
+            if (stats != null) {
+                stats.recordHold(System.nanoTime() - holdStart);
+            }
+            lock.unlockWrite(writeStamp);
+        }
+
+        @Override
+        long read() {
+            return state;
+        }
+
+        @Override
+        boolean compareAndSet(long expected, long updated) {
+            if (state != expected) {
+                return false;
+            }
+            state = updated;
+            return true;
+        }
+
+        @Override
+        long readShared() {
+            long stamp = lock.tryOptimisticRead();
+            long value = state;
+            if (lock.validate(stamp)) {
+                return value;
+            }
+            stamp = lock.readLock();
+            try {
+                return state;
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        @Override
+        void awaitStockingDone() throws InterruptedException {
+            long seen = stockingRounds;
+            unlock();
+            try {
+                // The round is checked under waitLock, which signalStockingDone needs to signal,
+                // so a signal between unlock() and await() cannot be missed
+                waitLock.lock();
+                try {
+                    while (stockingRounds == seen) {
+                        stockingDone.await();
+                    }
+                } finally {
+                    waitLock.unlock();
+                }
+            } finally {
+                lock();
+            }
+        }
+
+        @Override
+        void signalStockingDone() {
+            stockingRounds++; // Only written under the write lock
+            waitLock.lock();
+            try {
+                stockingDone.signalAll();
+            } finally {
+                waitLock.unlock();
+            }
+        }
+    }
+
+    // ATOMIC: the state is an AtomicLong; the lock only orders the queue and stocking changes
+    private static final class Atomic extends FieldSync {
+        private final ReentrantLock lock;
+        private final Condition stockingDone;
+        private final AtomicLong state = new AtomicLong();
+
+        Atomic(ReentrantLock lock) {
+            this.lock = lock;
+            this.stockingDone = lock.newCondition();
+        }
+
+        @Override
+        void lock() {
+            lock.lock();
+        }
+
+        @Override
+        void unlock() {
+            lock.unlock();
+        }
+
+        @Override
+        long read() {
+            return state.get();
+        }
+
+        @Override
+        boolean compareAndSet(long expected, long updated) {
+            return state.compareAndSet(expected, updated);
+        }
+
+        @Override
+        long readShared() {
+            return state.get();
+        }
+
+        @Override
+        boolean lockFreeBuying() {
+            return true;
+        }
+
+        @Override
+        void awaitStockingDone() throws InterruptedException {
+            stockingDone.await();
+        }
+
+        @Override
+        void signalStockingDone() {
+            stockingDone.signalAll();
+        }
+    }
+}
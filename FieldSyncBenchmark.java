@@ -0,0 +1,131 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Compares the field synchronisation strategies (field.sync, see FieldSync).
+// For each strategy and buyer-thread count, buyer threads buy from one field the way Buyer does
+// (tryBuy, then cancelWait when there was nothing to buy), and a buyer that finds it empty
+// restocks it as a farmer would (tryStartStocking, addAnimals, finishStocking), so the field
+// never waits for a thread that is not scheduled. A reader thread polls getCurrentCount and
+// isBeingStocked like the GUI. Each run is preceded by a warm-up run of the same length, and
+// reports purchases and reads per microsecond plus the latency of tryBuy.
+//
+// Usage: java FieldSyncBenchmark [millis] [buyerThreads...]
+//   e.g. java FieldSyncBenchmark 2000 1 4 16
+class FieldSyncBenchmark {
+    private static final long DEFAULT_MILLIS = 1000;
+    private static final int[] DEFAULT_BUYER_THREADS = {1, 4, 16};
+
+    // What one run measured
+    private record Result(long purchases, long reads, long stockings, LogHistogram buyLatency, long nanos) {
+    }
+
+    public static void main(String[] args) throws Exception {
+        long millis = args.length > 0 ? Long.parseLong(args[0]) : DEFAULT_MILLIS;
+        int[] buyerThreads = DEFAULT_BUYER_THREADS;
+        if (args.length > 1) {
+            buyerThreads = new int[args.length - 1];
+            for (int i = 1; i < args.length; i++) {
+                buyerThreads[i - 1] = Integer.parseInt(args[i]);
+            }
+        }
+
+        System.out.printf("%-9s %7s %14s %12s %10s %10s %10s %10s%n",
+                "sync", "buyers", "purchases/us", "reads/us", "stockings", "buy_p50ns", "buy_p99ns", "buy_p999ns");
+        for (FieldSync.Kind kind : FieldSync.Kind.values()) {
+            for (int buyers : buyerThreads) {
+                runOnce(kind, buyers, millis); // Warm-up
+                Result result = runOnce(kind, buyers, millis);
+                double micros = result.nanos() / 1000.0;
+                System.out.printf("%-9s %7d %14.3f %12.3f %10d %10d %10d %10d%n", kind, buyers,
+                        result.purchases() / micros, result.reads() / micros, result.stockings(),
+                        result.buyLatency().percentile(0.5), result.buyLatency().percentile(0.99),
+                        result.buyLatency().percentile(0.999));
+            }
+        }
+    }
+
+    private static Result runOnce(FieldSync.Kind kind, int buyers, long millis) throws Exception {
+        SimulationConfig config = SimulationConfig.defaults().with("field.sync", kind.name());
+        Field field = new Field(AnimalType.COWS, new WorldState(), config);
+        int load = config.getFarmerMaxAnimals();
+        AtomicBoolean stop = new AtomicBoolean();
+        CountDownLatch start = new CountDownLatch(1);
+        LogHistogram[] latencies = new LogHistogram[buyers];
+        long[] counts = new long[buyers * 16]; // Purchases and stockings per buyer, padded apart
+        long[] reads = new long[2];
+        List<Thread> threads = new ArrayList<>();
+
+        for (int t = 0; t < buyers; t++) {
+            int index = t;
+            latencies[index] = new LogHistogram();
+            threads.add(new Thread(() -> {
+                Field.Waiter waiter = new Field.Waiter(() -> { });
+                LogHistogram latency = latencies[index];
+                long bought = 0;
+                long stocked = 0;
+                awaitStart(start);
+                while (!stop.get()) {
+                    long begin = System.nanoTime();
+                    Field.BuyResult result = field.tryBuy(waiter);
+                    latency.record(System.nanoTime() - begin);
+                    if (result == Field.BuyResult.BOUGHT) {
+                        bought++;
+                        continue;
+                    }
+                    if (!field.cancelWait(waiter) && field.tryBuy(waiter) == Field.BuyResult.BOUGHT) {
+                        bought++; // Handed an animal just before giving up
+                    } else if (result == Field.BuyResult.EMPTY && field.tryStartStocking()) {
+                        field.addAnimals(load);
+                        field.finishStocking();
+                        stocked++;
+                    }
+                }
+                counts[index * 16] = bought;
+                counts[index * 16 + 1] = stocked;
+            }, "buyer-" + t));
+        }
+        threads.add(new Thread(() -> {
+            long done = 0;
+            int seen = 0; // Kept so the reads cannot be optimised away
+            awaitStart(start);
+            while (!stop.get()) {
+                seen += field.getCurrentCount() + (field.isBeingStocked() ? 1 : 0);
+                done += 2;
+            }
+            reads[0] = done;
+            reads[1] = seen;
+        }, "reader"));
+
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        Thread.sleep(millis);
+        stop.set(true);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        long nanos = System.nanoTime() - begin;
+
+        long purchases = 0;
+        long stockings = 0;
+        LogHistogram latency = new LogHistogram();
+        for (int t = 0; t < buyers; t++) {
+            purchases += counts[t * 16];
+            stockings += counts[t * 16 + 1];
+            latency.merge(latencies[t]);
+        }
+        return new Result(purchases, reads[0], stockings, latency, nanos);
+    }
+
+    private static void awaitStart(CountDownLatch start) {
+        try {
+            start.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,95 @@
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+// Contention figures of one timed lock (a TimedLock, or the write lock of a STAMPED field): how
+// often it was taken and contended, how long threads waited to get it, how long they held it and
+// how many threads were queued ahead of them.
+// The figures are metrics of the farm's MetricsRegistry under "lock.<name>.", so they appear in
+// its report and dumps, and the same object is the lock's JMX MBean.
+public class LockStats implements LockStatsMBean {
+    private final String name;
+    private final boolean fair;
+    private final IntSupplier queueLength; // Threads waiting for the lock right now
+    private final LongAdder acquisitions;
+    private final LongAdder contended;
+    private final LogHistogram waitNanos;
+    private final LogHistogram holdNanos;
+    private final LogHistogram queueLengths;
+
+    LockStats(String name, boolean fair, IntSupplier queueLength, MetricsRegistry metrics) {
+        this.name = name;
+        this.fair = fair;
+        this.queueLength = queueLength;
+        String prefix = "lock." + name + ".";
+        acquisitions = metrics.counter(prefix + "acquisitions");
+        contended = metrics.counter(prefix + "contended");
+        waitNanos = metrics.logHistogram(prefix + "wait_ns");
+        holdNanos = metrics.logHistogram(prefix + "hold_ns");
+        queueLengths = metrics.logHistogram(prefix + "queue_length");
+    }
+
+    // An acquisition that waited waitedNanos behind queueLength other threads
+    void recordAcquire(long waitedNanos, int queueLength, boolean wasContended) {
+        acquisitions.increment();
+        if (wasContended) {
+            contended.increment();
+        }
+        waitNanos.record(waitedNanos);
+        queueLengths.record(queueLength);
+    }
+
+    // The lock was held for heldNanos without interruption
+    void recordHold(long heldNanos) {
+        holdNanos.record(heldNanos);
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public boolean isFair() {
+        return fair;
+    }
+
+    @Override
+    public long getAcquisitions() {
+        return acquisitions.sum();
+    }
+
+    @Override
+    public long getContendedAcquisitions() {
+        return contended.sum();
+    }
+
+    @Override
+    public double getMeanWaitNanos() {
+        return waitNanos.mean();
+    }
+
+    @Override
+    public long getP99WaitNanos() {
+        return waitNanos.percentile(0.99);
+    }
+
+    @Override
+    public double getMeanHoldNanos() {
+        return holdNanos.mean();
+    }
+
+    @Override
+    public long getP99HoldNanos() {
+        return holdNanos.percentile(0.99);
+    }
+
+    @Override
+    public long getMaxQueueLength() {
+        return queueLengths.max();
+    }
+
+    @Override
+    public int getQueueLength() {
+        return queueLength.getAsInt();
+    }
+}
@@ -0,0 +1,24 @@
+// What JMX clients (jconsole, VisualVM) see of a timed lock, see LockStats
+public interface LockStatsMBean {
+    String getName();
+
+    boolean isFair();
+
+    long getAcquisitions();
+
+    // Acquisitions that found the lock held by another thread
+    long getContendedAcquisitions();
+
+    double getMeanWaitNanos();
+
+    long getP99WaitNanos();
+
+    double getMeanHoldNanos();
+
+    long getP99HoldNanos();
+
+    long getMaxQueueLength();
+
+    // Threads waiting for the lock right now
+    int getQueueLength();
+}
@@ -0,0 +1,77 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// Bounded lock-free multi-producer / single-consumer ring buffer for log lines.
+// Every slot carries a sequence number: producers claim a position with a CAS on the tail and
+// publish by advancing the slot's sequence, the single consumer frees the slot the same way.
+// No thread ever blocks inside the buffer; a full buffer is reported back to the caller.
+final class LogRingBuffer {
+    private final int capacity;
+    private final int mask;
+    private final AtomicReferenceArray<String> slots;
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong(); // Next position producers will claim
+    private volatile long head = 0;                    // Next position the consumer will read
+
+    LogRingBuffer(int requestedCapacity) {
+        // Round up to a power of two so positions map to slots with a mask
+        int size = Integer.highestOneBit(Math.max(2, requestedCapacity - 1)) << 1;
+        this.capacity = size;
+        this.mask = size - 1;
+        this.slots = new AtomicReferenceArray<>(size);
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    // Producer side: returns false if the buffer is full
+    boolean offer(String line) {
+        long position = tail.get();
+        while (true) {
+            int index = (int) (position & mask);
+            long difference = sequences.get(index) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    slots.lazySet(index, line);
+                    sequences.set(index, position + 1); // Publish to the consumer
+                    return true;
+                }
+                position = tail.get();
+            } else if (difference < 0) {
+                return false; // Slot not yet consumed from the previous lap
+            } else {
+                position = tail.get(); // Another producer claimed it, retry
+            }
+        }
+    }
+
+    // Consumer side: moves up to maxLines lines into the builder, one per line, and returns how many
+    int drainTo(StringBuilder out, int maxLines) {
+        long position = head;
+        int drained = 0;
+        while (drained < maxLines) {
+            int index = (int) (position & mask);
+            if (sequences.get(index) != position + 1) {
+                break; // Nothing published here yet
+            }
+            out.append(slots.get(index)).append('\n');
+            slots.lazySet(index, null);
+            sequences.set(index, position + capacity); // Hand the slot back to producers
+            position++;
+            drained++;
+        }
+        head = position;
+        return drained;
+    }
+
+    // Number of lines ever offered successfully
+    long published() {
+        return tail.get();
+    }
+
+    boolean isEmpty() {
+        return head == tail.get();
+    }
+}
@@ -1,25 +1,84 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
 class Main {
     public static void main(String[] args) {
-        // Initialize world state
+        // Check if GUI should be displayed and whether ticks follow the wall clock
+        boolean showGUI = false;
+        boolean virtualTime = false;
+        String logFile = null; // Event lines go to stdout unless --log-file is given
+        for (String arg : args) {
+            if (arg.equalsIgnoreCase("-gui") || arg.equalsIgnoreCase("--gui")) {
+                showGUI = true;
+                System.out.println("GUI will be displayed");
+            } else if (arg.equalsIgnoreCase("-virtual") || arg.equalsIgnoreCase("--virtual")) {
+                virtualTime = true;
+            } else if (arg.equalsIgnoreCase("-virtual-threads") || arg.equalsIgnoreCase("--virtual-threads")) {
+                AgentRuntime.setKind(AgentRuntime.Kind.VIRTUAL);
+            } else if (arg.startsWith("--log-file=")) {
+                logFile = arg.substring("--log-file=".length());
+            }
+        }
+
+        // Simulation parameters: defaults, then --config=<file>, then --<key>=<value> flags
+        SimulationConfig config;
+        try {
+            config = SimulationConfig.fromArgs(args);
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("Invalid configuration: " + e.getMessage());
+            return;
+        }
+        // A deterministic run must not lose event lines depending on how fast the writer keeps up
+        boolean deterministic = config.isDeterministic() && !showGUI;
+        FarmLogger.configure(config);
+        FarmLogger.configureEventOutput(logFile,
+                deterministic ? AsyncLogWriter.Backpressure.BLOCK : config.getLogBackpressure());
+
+        // Initialize world state (after the options above, since it opens the world-state log)
         WorldState worldState = WorldState.getInstance();
+        worldState.getMetrics().setLockTiming(config.isMetricsLocks());
+        if (!config.getMetricsFile().isEmpty()) {
+            try {
+                worldState.startMetricsDump(Files.newBufferedWriter(Paths.get(config.getMetricsFile())),
+                        config.getMetricsFile().endsWith(".json"), config.getMetricsInterval());
+            } catch (IOException e) {
+                System.err.println("Failed to open the metrics file: " + e.getMessage());
+            }
+        }
 
         // Create and set up the farm
-        Farm farm = new Farm();
+        Farm farm = new Farm(config);
         farm.addField();
 
-        // Initialize tick manager
-        int tickSize = Config.TICK_SIZE;
-        TickManager tickManager = new TickManager(tickSize);
+        // Initialize tick manager (the GUI always runs on the wall clock so it can be watched)
+        int tickSize = config.getTickSize();
+        TickManager.Mode mode = deterministic ? TickManager.Mode.DETERMINISTIC
+                : (virtualTime && !showGUI) ? TickManager.Mode.VIRTUAL : TickManager.Mode.WALL_CLOCK;
+        TickManager tickManager = new TickManager(tickSize, mode, worldState);
         FarmLogger.setTickManager(tickManager);
+        if (config.isMetricsLocks()) {
+            worldState.getMetrics().registerMBeans(); // The field and clock locks exist now
+        }
 
-        // Check if GUI should be displayed
-        boolean showGUI = false;
-        for (String arg : args) {
-            if (arg.equalsIgnoreCase("-gui") || arg.equalsIgnoreCase("--gui")) {
-                showGUI = true;
-                System.out.println("GUI will be displayed");
-                break;
+        if (config.getEngine() == SimulationConfig.Engine.EVENTLOOP) {
+            // One thread steps every agent as fast as it can, so there is nothing for a GUI to watch
+            if (showGUI) {
+                System.out.println("The event-loop engine runs headless; ignoring --gui");
+            }
+            EventLoopEngine engine = new EventLoopEngine(farm, tickManager);
+            engine.addDeliveryManager();
+            for (int i = 0; i < config.getNumberOfFarmers(); i++) {
+                engine.addFarmer(String.valueOf(i + 1));
             }
+            for (int i = 0; i < config.getNumberOfBuyers(); i++) {
+                engine.addBuyer(String.valueOf(i + 1));
+            }
+            engine.runUntil(config.getSimulationDuration());
+            tickManager.stopTicks();
+            closeLog();
+            reportMetrics(worldState, config);
+            return;
         }
 
         // Only create and set up GUI if requested
@@ -34,30 +93,30 @@ class Main {
             }
         }
 
-        // Start the tick manager
-        tickManager.start();
-
         // Start the delivery manager
         DeliveryManager deliveryManager = new DeliveryManager(farm, tickManager);
         deliveryManager.start();
 
         // Create and start farmers
-        int numberOfFarmers = Config.NUMBER_OF_FARMERS;
+        int numberOfFarmers = config.getNumberOfFarmers();
         for (int i = 0; i < numberOfFarmers; i++) {
             Farmer farmer = new Farmer(farm, String.valueOf(i + 1), tickManager);
             farmer.start();
         }
 
         // Create and start buyers
-        int numberOfBuyers = Config.NUMBER_OF_BUYERS;
+        int numberOfBuyers = config.getNumberOfBuyers();
         for (int i = 0; i < numberOfBuyers; i++) {
             Buyer buyer = new Buyer(String.valueOf(i + 1), farm, tickManager);
             buyer.start();
         }
 
-        // Let the simulation run for the specified duration
+        // Start the tick manager once every agent is registered, so virtual time cannot run ahead of them
+        tickManager.start();
+
+        // Let the simulation run for the specified number of ticks
         try {
-            Thread.sleep((long) Config.SIMULATION_DURATION * tickSize);
+            tickManager.awaitTick(config.getSimulationDuration());
         } catch (InterruptedException e) {
             // Restore interrupt status and exit
             Thread.currentThread().interrupt();
@@ -65,10 +124,27 @@ class Main {
 
         // Stop the tick manager
         tickManager.stopTicks();
+        closeLog();
+        reportMetrics(worldState, config);
 
         // Notify GUI if simulation ended
         if (showGUI && worldState.getGUI() != null) {
             worldState.getGUI().showSimulationEnded();
         }
     }
+
+    // The simulation has stopped: flush the event log and close the world-state log, which
+    // belong to the whole process rather than to one farm's TickManager
+    private static void closeLog() {
+        FarmLogger.flush();
+        FarmLogger.closeWorldStateLog();
+    }
+
+    // Writes the last metrics dump and prints the end-of-run report (after the event log is flushed)
+    private static void reportMetrics(WorldState worldState, SimulationConfig config) {
+        worldState.finishMetricsDump();
+        if (config.isMetricsReport()) {
+            System.out.print(worldState.metricsReport());
+        }
+    }
 }
@@ -0,0 +1,181 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntSupplier;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+// Named counters and tick histograms of one farm, so throughput can be tuned from numbers
+// instead of from the event log.
+// A metric is looked up by name once, when the agent, field or farm that records it is set up,
+// and the returned LongAdder or TickHistogram is kept: recording is then a single striped or
+// atomic increment with no lookup and no lock. Reading (report, CSV and JSON dumps) walks the
+// metrics in name order and may run while agents record.
+//
+// The registry also hands out the farm's locks (newLock). With lock timing on they are
+// TimedLocks whose contention is recorded here and can be published over JMX; with it off
+// (the default) they are plain ReentrantLocks that cost nothing extra.
+public class MetricsRegistry {
+    private static final String JMX_DOMAIN = "FarmSimulation";
+
+    private final Map<String, LongAdder> counters = new ConcurrentSkipListMap<>();
+    private final Map<String, TickHistogram> histograms = new ConcurrentSkipListMap<>();
+    private final Map<String, LogHistogram> logHistograms = new ConcurrentSkipListMap<>();
+    private final List<LockStats> lockStats = new CopyOnWriteArrayList<>();
+    private volatile boolean lockTiming = false;
+
+    // The counter with this name, created on first use
+    public LongAdder counter(String name) {
+        return counters.computeIfAbsent(name, n -> new LongAdder());
+    }
+
+    // The histogram with this name, created on first use with values up to maxTicks
+    public TickHistogram histogram(String name, int maxTicks) {
+        return histograms.computeIfAbsent(name, n -> new TickHistogram(maxTicks));
+    }
+
+    // The wide-range histogram with this name (e.g. nanoseconds), created on first use
+    public LogHistogram logHistogram(String name) {
+        return logHistograms.computeIfAbsent(name, n -> new LogHistogram());
+    }
+
+    // Whether locks created from now on record their contention
+    public void setLockTiming(boolean enabled) {
+        lockTiming = enabled;
+    }
+
+    // A lock for the named resource, timed if lock timing is on
+    public ReentrantLock newLock(String name, boolean fair) {
+        if (!lockTiming) {
+            return new ReentrantLock(fair);
+        }
+        TimedLock lock = new TimedLock(name, fair, this);
+        lockStats.add(lock.getStats());
+        return lock;
+    }
+
+    // Contention figures for a lock that is not a ReentrantLock (e.g. a StampedLock), which its
+    // owner records itself; null if lock timing is off
+    LockStats newLockStats(String name, boolean fair, IntSupplier queueLength) {
+        if (!lockTiming) {
+            return null;
+        }
+        LockStats stats = new LockStats(name, fair, queueLength, this);
+        lockStats.add(stats);
+        return stats;
+    }
+
+    // Publishes every timed lock as an MBean named FarmSimulation:type=Lock,name=<lock name>.
+    // Only one farm per JVM should do this; names already taken are skipped.
+    public void registerMBeans() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (LockStats stats : lockStats) {
+            try {
+                ObjectName objectName = new ObjectName(JMX_DOMAIN + ":type=Lock,name=" + stats.getName());
+                if (!server.isRegistered(objectName)) {
+                    server.registerMBean(stats, objectName);
+                }
+            } catch (JMException e) {
+                System.err.println("Failed to publish lock " + stats.getName() + " over JMX: " + e.getMessage());
+            }
+        }
+    }
+
+    public long getCount(String name) {
+        LongAdder counter = counters.get(name);
+        return (counter == null) ? 0 : counter.sum();
+    }
+
+    // Every counter and histogram as an aligned table, e.g. for the end of a run
+    public String report() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%-34s %12s%n", "counter", "value"));
+        for (Map.Entry<String, LongAdder> entry : counters.entrySet()) {
+            sb.append(String.format("%-34s %12d%n", entry.getKey(), entry.getValue().sum()));
+        }
+        sb.append(String.format("%-34s %12s %8s %6s %6s %6s %6s%n", "histogram (ticks)", "count", "mean", "p50",
+                "p90", "p99", "max"));
+        for (Map.Entry<String, TickHistogram> entry : histograms.entrySet()) {
+            TickHistogram histogram = entry.getValue();
+            sb.append(String.format(Locale.ROOT, "%-34s %12d %8.1f %6d %6d %6d %6d%n", entry.getKey(),
+                    histogram.getCount(), histogram.mean(), histogram.percentile(0.5), histogram.percentile(0.9),
+                    histogram.percentile(0.99), histogram.max()));
+        }
+        if (!logHistograms.isEmpty()) {
+            sb.append(String.format("%-34s %12s %10s %10s %10s %10s %10s%n", "histogram (values)", "count", "mean",
+                    "p50", "p90", "p99", "max"));
+            for (Map.Entry<String, LogHistogram> entry : logHistograms.entrySet()) {
+                LogHistogram histogram = entry.getValue();
+                sb.append(String.format(Locale.ROOT, "%-34s %12d %10.1f %10d %10d %10d %10d%n", entry.getKey(),
+                        histogram.getCount(), histogram.mean(), histogram.percentile(0.5),
+                        histogram.percentile(0.9), histogram.percentile(0.99), histogram.max()));
+            }
+        }
+        return sb.toString();
+    }
+
+    // Appends the current values as "tick,metric,value" rows; a histogram gives one row each for
+    // its count, mean, p50 and p99, e.g. "1000,buyer.purchase_wait.p99,48"
+    public void writeCsv(Appendable out, int tick) {
+        try {
+            for (Map.Entry<String, LongAdder> entry : counters.entrySet()) {
+                out.append(tick + "," + entry.getKey() + "," + entry.getValue().sum() + "\n");
+            }
+            for (Map.Entry<String, TickHistogram> entry : histograms.entrySet()) {
+                TickHistogram histogram = entry.getValue();
+                String prefix = tick + "," + entry.getKey();
+                out.append(prefix + ".count," + histogram.getCount() + "\n");
+                out.append(prefix + ".mean," + String.format(Locale.ROOT, "%.2f", histogram.mean()) + "\n");
+                out.append(prefix + ".p50," + histogram.percentile(0.5) + "\n");
+                out.append(prefix + ".p99," + histogram.percentile(0.99) + "\n");
+            }
+            for (Map.Entry<String, LogHistogram> entry : logHistograms.entrySet()) {
+                LogHistogram histogram = entry.getValue();
+                String prefix = tick + "," + entry.getKey();
+                out.append(prefix + ".count," + histogram.getCount() + "\n");
+                out.append(prefix + ".mean," + String.format(Locale.ROOT, "%.2f", histogram.mean()) + "\n");
+                out.append(prefix + ".p50," + histogram.percentile(0.5) + "\n");
+                out.append(prefix + ".p99," + histogram.percentile(0.99) + "\n");
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Appends the current values as one JSON object on one line, e.g.
+    // {"tick":1000,"buyer.purchases":812,"buyer.purchase_wait":{"count":812,"mean":9.61,"p50":0,"p99":48}}
+    public void writeJson(Appendable out, int tick) {
+        StringBuilder sb = new StringBuilder("{\"tick\":").append(tick);
+        for (Map.Entry<String, LongAdder> entry : counters.entrySet()) {
+            sb.append(",\"").append(entry.getKey()).append("\":").append(entry.getValue().sum());
+        }
+        for (Map.Entry<String, TickHistogram> entry : histograms.entrySet()) {
+            TickHistogram histogram = entry.getValue();
+            sb.append(",\"").append(entry.getKey()).append("\":{\"count\":").append(histogram.getCount())
+                    .append(",\"mean\":").append(String.format(Locale.ROOT, "%.2f", histogram.mean()))
+                    .append(",\"p50\":").append(histogram.percentile(0.5))
+                    .append(",\"p99\":").append(histogram.percentile(0.99)).append('}');
+        }
+        for (Map.Entry<String, LogHistogram> entry : logHistograms.entrySet()) {
+            LogHistogram histogram = entry.getValue();
+            sb.append(",\"").append(entry.getKey()).append("\":{\"count\":").append(histogram.getCount())
+                    .append(",\"mean\":").append(String.format(Locale.ROOT, "%.2f", histogram.mean()))
+                    .append(",\"p50\":").append(histogram.percentile(0.5))
+                    .append(",\"p99\":").append(histogram.percentile(0.99)).append('}');
+        }
+        sb.append("}\n");
+        try {
+            out.append(sb);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
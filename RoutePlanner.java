@@ -0,0 +1,179 @@
+import java.util.ArrayList;
+import java.util.List;
+
+// Plans a farmer's route through the fields of its load (farmer.stocking.policy=PLANNED_ROUTE).
+// The cost model is the one the farmer walks: every leg, from the enclosure or a field to the
+// next field, takes walkTicks for all the animals still carried; stocking takes a tick per animal
+// that fits; and whatever did not fit rides back to the enclosure (farmer.return.ticks). A route
+// costs its ticks plus the ticks buyers wait on it: at each field the buyers already waiting and
+// those expected before the farmer is done there, less the animals the field still holds, wait
+// until its stocking finishes, as many as get an animal. Fields that are full in the snapshot are
+// left out, their animals go back to the enclosure.
+//
+// Up to farmer.route.exact.max.fields fields every order is searched, with branch and bound;
+// beyond that a greedy route is improved by swapping pairs of fields while a swap helps.
+final class RoutePlanner {
+    private RoutePlanner() {
+    }
+
+    // The fields to visit, in the order that costs least
+    static List<AnimalType> plan(int[] load, StockingPolicy.FieldSnapshot fields, SimulationConfig config) {
+        int[] candidates = new int[AnimalType.COUNT];
+        int n = 0;
+        for (int id = 0; id < AnimalType.COUNT; id++) {
+            if (stockable(id, load, fields) > 0) {
+                candidates[n++] = id;
+            }
+        }
+        int[] route = (n <= config.getRouteExactMaxFields())
+                ? new Search(load, fields, config, candidates, n).run()
+                : improve(greedy(load, fields, config, candidates, n), load, fields, config);
+
+        List<AnimalType> order = new ArrayList<>(n);
+        for (int id : route) {
+            order.add(AnimalType.of(id));
+        }
+        return order;
+    }
+
+    // Ticks plus buyer-waiting ticks of visiting the fields in route
+    static double cost(int[] route, int[] load, StockingPolicy.FieldSnapshot fields, SimulationConfig config) {
+        int tick = 0;
+        int carried = AnimalType.total(load);
+        double waiting = 0;
+        for (int id : route) {
+            int stocked = stockable(id, load, fields);
+            tick += FarmRules.walkTicks(config, carried) + stocked;
+            carried -= stocked;
+            waiting += buyerWait(id, stocked, tick, fields);
+        }
+        return waiting + tick + config.getReturnTicks();
+    }
+
+    private static int stockable(int id, int[] load, StockingPolicy.FieldSnapshot fields) {
+        return Math.min(load[id], Math.max(0, fields.capacity() - fields.counts()[id]));
+    }
+
+    // Buyer ticks spent waiting for the stocked animals of field id that are ready at tick
+    private static double buyerWait(int id, int stocked, int tick, StockingPolicy.FieldSnapshot fields) {
+        double buyers = fields.waitingBuyers()[id] + fields.demandPerTick()[id] * tick - fields.counts()[id];
+        return Math.max(0, Math.min(buyers, stocked)) * tick;
+    }
+
+    // Exhaustive search in AnimalType order; a route replaces the best only if strictly cheaper,
+    // so ties go to the first route found and planning is deterministic
+    private static final class Search {
+        private final int[] load;
+        private final StockingPolicy.FieldSnapshot fields;
+        private final SimulationConfig config;
+        private final int[] candidates;
+        private final int n;
+        private final int[] route;
+        private final boolean[] used;
+        private int[] best;
+        private double bestCost = Double.POSITIVE_INFINITY;
+
+        Search(int[] load, StockingPolicy.FieldSnapshot fields, SimulationConfig config, int[] candidates, int n) {
+            this.load = load;
+            this.fields = fields;
+            this.config = config;
+            this.candidates = candidates;
+            this.n = n;
+            this.route = new int[n];
+            this.used = new boolean[n];
+        }
+
+        int[] run() {
+            visit(0, 0, AnimalType.total(load), 0);
+            return best;
+        }
+
+        private void visit(int depth, int tick, int carried, double waiting) {
+            // Ticks and waiting only grow along a route, so this is a lower bound of its cost
+            if (waiting + tick >= bestCost) {
+                return;
+            }
+            if (depth == n) {
+                double cost = waiting + tick + config.getReturnTicks();
+                if (cost < bestCost) {
+                    bestCost = cost;
+                    best = route.clone();
+                }
+                return;
+            }
+            for (int i = 0; i < n; i++) {
+                if (used[i]) {
+                    continue;
+                }
+                int id = candidates[i];
+                int stocked = stockable(id, load, fields);
+                int done = tick + FarmRules.walkTicks(config, carried) + stocked;
+                used[i] = true;
+                route[depth] = id;
+                visit(depth + 1, done, carried - stocked, waiting + buyerWait(id, stocked, done, fields));
+                used[i] = false;
+            }
+        }
+    }
+
+    // Repeatedly the field that adds the least cost per animal stocked
+    private static int[] greedy(int[] load, StockingPolicy.FieldSnapshot fields, SimulationConfig config,
+                                int[] candidates, int n) {
+        int[] route = new int[n];
+        boolean[] used = new boolean[n];
+        int tick = 0;
+        int carried = AnimalType.total(load);
+        for (int depth = 0; depth < n; depth++) {
+            int chosen = -1;
+            double chosenRate = Double.POSITIVE_INFINITY;
+            for (int i = 0; i < n; i++) {
+                if (used[i]) {
+                    continue;
+                }
+                int id = candidates[i];
+                int stocked = stockable(id, load, fields);
+                int leg = FarmRules.walkTicks(config, carried) + stocked;
+                double rate = (leg + buyerWait(id, stocked, tick + leg, fields)) / stocked;
+                if (rate < chosenRate) {
+                    chosen = i;
+                    chosenRate = rate;
+                }
+            }
+            int id = candidates[chosen];
+            int stocked = stockable(id, load, fields);
+            used[chosen] = true;
+            route[depth] = id;
+            tick += FarmRules.walkTicks(config, carried) + stocked;
+            carried -= stocked;
+        }
+        return route;
+    }
+
+    // Swaps two fields of the route while that makes it cheaper
+    private static int[] improve(int[] route, int[] load, StockingPolicy.FieldSnapshot fields, SimulationConfig config) {
+        double cost = cost(route, load, fields, config);
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            for (int i = 0; i < route.length - 1; i++) {
+                for (int j = i + 1; j < route.length; j++) {
+                    swap(route, i, j);
+                    double swapped = cost(route, load, fields, config);
+                    if (swapped < cost) {
+                        cost = swapped;
+                        improved = true;
+                    } else {
+                        swap(route, i, j);
+                    }
+                }
+            }
+        }
+        return route;
+    }
+
+    private static void swap(int[] route, int i, int j) {
+        int id = route[i];
+        route[i] = route[j];
+        route[j] = id;
+    }
+}
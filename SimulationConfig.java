@@ -0,0 +1,296 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.Set;
+
+// All tunable parameters of a simulation run, read at runtime instead of compiled in.
+// Values start from the defaults below, are overridden by a properties file (--config=<file>,
+// see simulation.properties) and then by command-line flags of the form --<key>=<value>,
+// e.g. --buyers=10 --enclosure.policy=SHARED. A config is immutable; with() derives a new one,
+// which is how ExperimentRunner sweeps parameters without restarting the JVM.
+public final class SimulationConfig {
+    // How the agents are run
+    public enum Engine {
+        THREADS,  // One thread per agent, synchronised by the TickManager
+        EVENTLOOP // State machines stepped by one thread (EventLoopEngine)
+    }
+
+    private static final Properties DEFAULTS = new Properties();
+    static {
+        DEFAULTS.setProperty("tick.size", "100");                    // Milliseconds per tick (wall-clock mode)
+        DEFAULTS.setProperty("farmers", "3");                        // Initial farmer count
+        DEFAULTS.setProperty("buyers", "3");                         // Initial buyer count
+        DEFAULTS.setProperty("simulation.duration", "10000");        // Total ticks before ending
+        DEFAULTS.setProperty("seed", "");                            // Seed of every random choice, empty for a random seed
+        DEFAULTS.setProperty("deterministic", "false");              // Virtual time with agents in a fixed order each tick
+        DEFAULTS.setProperty("engine", "THREADS");                   // THREADS or EVENTLOOP
+        DEFAULTS.setProperty("delivery.frequency", "100");           // Average ticks between deliveries
+        DEFAULTS.setProperty("delivery.size", "10");                 // Animals per delivery
+        DEFAULTS.setProperty("farmer.break.chance", "5");            // % chance of a break each tick
+        DEFAULTS.setProperty("farmer.break.min.duration", "20");
+        DEFAULTS.setProperty("farmer.break.max.duration", "40");
+        DEFAULTS.setProperty("farmer.max.animals", "10");            // Max animals a farmer can carry
+        DEFAULTS.setProperty("farmer.walk.base.ticks", "10");        // Walk to a field: base + per animal carried
+        DEFAULTS.setProperty("farmer.walk.ticks.per.animal", "1");
+        DEFAULTS.setProperty("farmer.return.ticks", "10");           // Walk back to the enclosure
+        DEFAULTS.setProperty("farmer.stocking.policy", "PLANNED_ROUTE"); // Order a load's fields are stocked in, see StockingPolicy
+        DEFAULTS.setProperty("farmer.route.exact.max.fields", "8");  // Larger routes are planned heuristically, see RoutePlanner
+        DEFAULTS.setProperty("field.capacity", "50");                // Maximum animals per field
+        DEFAULTS.setProperty("field.initial.animal.count", "5");     // Starting animals per field
+        DEFAULTS.setProperty("field.sync", "FAIR");                  // FAIR, NON_FAIR, STAMPED or ATOMIC, see FieldSync
+        DEFAULTS.setProperty("buyer.max.wait", "50");                // Ticks a buyer waits before giving up
+        DEFAULTS.setProperty("buyer.max.cooldown", "5");             // Buyers pause 1..this many ticks after buying
+        DEFAULTS.setProperty("buyer.queue", "FIFO");                 // FIFO hands restocked animals to the longest waiting, RACE wakes all
+        DEFAULTS.setProperty("enclosure.policy", "EXCLUSIVE");       // EXCLUSIVE or SHARED
+        DEFAULTS.setProperty("log.buffer.capacity", "16384");        // Event lines buffered for the writer
+        DEFAULTS.setProperty("log.backpressure", "BLOCK");           // BLOCK, DROP or SAMPLE when it is full
+        DEFAULTS.setProperty("log.sample.rate", "10");
+        DEFAULTS.setProperty("snapshot.binary", "false");            // Binary world-state log
+        DEFAULTS.setProperty("snapshot.buffer.bytes", "65536");
+        DEFAULTS.setProperty("snapshot.max.bytes", "268435456");     // Text log is rotated past this size
+        DEFAULTS.setProperty("snapshot.max.files", "3");
+        DEFAULTS.setProperty("snapshot.flush.millis", "1000");
+        DEFAULTS.setProperty("gui.refresh.fps", "30");
+        DEFAULTS.setProperty("metrics.report", "false");             // Print the metrics after the event log at the end of a run
+        DEFAULTS.setProperty("metrics.file", "");                    // Periodic metrics dump, .json for JSON lines, else CSV
+        DEFAULTS.setProperty("metrics.interval", "1000");            // Ticks between dumps
+        DEFAULTS.setProperty("metrics.locks", "false");              // Time the field and clock locks (also over JMX)
+    }
+
+    private static final SimulationConfig DEFAULT_CONFIG = new SimulationConfig(new Properties());
+
+    private final Properties values;
+    private final int tickSize;
+    private final int numberOfFarmers;
+    private final int numberOfBuyers;
+    private final int simulationDuration;
+    private final Long seed; // null when no seed was given
+    private final boolean deterministic;
+    private final Engine engine;
+    private final int deliveryFrequency;
+    private final int deliverySize;
+    private final int farmerBreakChance;
+    private final int farmerBreakMinDuration;
+    private final int farmerBreakMaxDuration;
+    private final int farmerMaxAnimals;
+    private final int walkBaseTicks;
+    private final int walkTicksPerAnimal;
+    private final int returnTicks;
+    private final StockingPolicy.Kind stockingPolicy;
+    private final int routeExactMaxFields;
+    private final int fieldCapacity;
+    private final int fieldInitialAnimalCount;
+    private final FieldSync.Kind fieldSync;
+    private final int buyerMaxWait;
+    private final int buyerMaxCooldown;
+    private final Field.QueuePolicy buyerQueuePolicy;
+    private final Farm.EnclosurePolicy enclosurePolicy;
+    private final int logBufferCapacity;
+    private final AsyncLogWriter.Backpressure logBackpressure;
+    private final int logSampleRate;
+    private final boolean snapshotBinary;
+    private final int snapshotBufferBytes;
+    private final long snapshotMaxBytes;
+    private final int snapshotMaxFiles;
+    private final long snapshotFlushMillis;
+    private final int guiRefreshFps;
+    private final boolean metricsReport;
+    private final String metricsFile;
+    private final int metricsInterval;
+    private final boolean metricsLocks;
+
+    // Throws IllegalArgumentException naming the key if a value is unknown or out of range
+    private SimulationConfig(Properties overrides) {
+        values = new Properties();
+        values.putAll(DEFAULTS);
+        for (String key : overrides.stringPropertyNames()) {
+            if (!DEFAULTS.containsKey(key)) {
+                throw new IllegalArgumentException("Unknown configuration key: " + key);
+            }
+            values.setProperty(key, overrides.getProperty(key).trim());
+        }
+        tickSize = positive("tick.size");
+        numberOfFarmers = atLeast("farmers", 0);
+        numberOfBuyers = atLeast("buyers", 0);
+        simulationDuration = positive("simulation.duration");
+        seed = values.getProperty("seed").isEmpty() ? null : longValue("seed");
+        deterministic = Boolean.parseBoolean(values.getProperty("deterministic"));
+        engine = enumValue("engine", Engine.class);
+        deliveryFrequency = positive("delivery.frequency");
+        deliverySize = atLeast("delivery.size", 0);
+        farmerBreakChance = atLeast("farmer.break.chance", 0);
+        farmerBreakMinDuration = atLeast("farmer.break.min.duration", 0);
+        // Break ticks, carried animals and buyer waits are shown through Activity's packed values
+        farmerBreakMaxDuration = between("farmer.break.max.duration", farmerBreakMinDuration, Activity.MAX_VALUE);
+        farmerMaxAnimals = between("farmer.max.animals", 1, Activity.MAX_VALUE);
+        walkBaseTicks = atLeast("farmer.walk.base.ticks", 0);
+        walkTicksPerAnimal = atLeast("farmer.walk.ticks.per.animal", 0);
+        returnTicks = atLeast("farmer.return.ticks", 0);
+        stockingPolicy = enumValue("farmer.stocking.policy", StockingPolicy.Kind.class);
+        routeExactMaxFields = atLeast("farmer.route.exact.max.fields", 0);
+        fieldCapacity = positive("field.capacity");
+        fieldInitialAnimalCount = atLeast("field.initial.animal.count", 0);
+        fieldSync = enumValue("field.sync", FieldSync.Kind.class);
+        buyerMaxWait = between("buyer.max.wait", 1, Activity.MAX_VALUE);
+        buyerMaxCooldown = positive("buyer.max.cooldown");
+        buyerQueuePolicy = enumValue("buyer.queue", Field.QueuePolicy.class);
+        enclosurePolicy = enumValue("enclosure.policy", Farm.EnclosurePolicy.class);
+        logBufferCapacity = positive("log.buffer.capacity");
+        logBackpressure = enumValue("log.backpressure", AsyncLogWriter.Backpressure.class);
+        logSampleRate = positive("log.sample.rate");
+        snapshotBinary = Boolean.parseBoolean(values.getProperty("snapshot.binary"));
+        snapshotBufferBytes = positive("snapshot.buffer.bytes");
+        snapshotMaxBytes = positiveLong("snapshot.max.bytes");
+        snapshotMaxFiles = atLeast("snapshot.max.files", 0);
+        snapshotFlushMillis = atLeast("snapshot.flush.millis", 0);
+        guiRefreshFps = positive("gui.refresh.fps");
+        metricsReport = Boolean.parseBoolean(values.getProperty("metrics.report"));
+        metricsFile = values.getProperty("metrics.file");
+        metricsInterval = positive("metrics.interval");
+        metricsLocks = Boolean.parseBoolean(values.getProperty("metrics.locks"));
+    }
+
+    // The built-in defaults
+    public static SimulationConfig defaults() {
+        return DEFAULT_CONFIG;
+    }
+
+    // Defaults, then the file named by --config=<file> if any, then every --<key>=<value> flag.
+    // Arguments that are not configuration flags (--gui, --virtual, ...) are ignored here.
+    public static SimulationConfig fromArgs(String[] args) throws IOException {
+        Properties overrides = new Properties();
+        for (String arg : args) {
+            if (arg.startsWith("--config=")) {
+                try (Reader reader = Files.newBufferedReader(Paths.get(arg.substring("--config=".length())))) {
+                    overrides.load(reader);
+                }
+            }
+        }
+        for (String arg : args) {
+            int equals = arg.indexOf('=');
+            if (arg.startsWith("--") && equals > 2 && DEFAULTS.containsKey(arg.substring(2, equals))) {
+                overrides.setProperty(arg.substring(2, equals), arg.substring(equals + 1));
+            } else if (arg.startsWith("--log-backpressure=")) {
+                overrides.setProperty("log.backpressure", arg.substring("--log-backpressure=".length()));
+            } else if (arg.equalsIgnoreCase("--binary-snapshots")) {
+                overrides.setProperty("snapshot.binary", "true");
+            } else if (arg.equalsIgnoreCase("--deterministic")) {
+                overrides.setProperty("deterministic", "true");
+            }
+        }
+        return new SimulationConfig(overrides);
+    }
+
+    // A copy of this config with one value changed
+    public SimulationConfig with(String key, String value) {
+        Properties overrides = new Properties();
+        overrides.putAll(values);
+        overrides.setProperty(key, value);
+        return new SimulationConfig(overrides);
+    }
+
+    public String get(String key) {
+        return values.getProperty(key);
+    }
+
+    public static Set<String> keys() {
+        return DEFAULTS.stringPropertyNames();
+    }
+
+    private int positive(String key) {
+        return atLeast(key, 1);
+    }
+
+    private int atLeast(String key, int minimum) {
+        return between(key, minimum, Integer.MAX_VALUE);
+    }
+
+    private int between(String key, int minimum, int maximum) {
+        int value;
+        try {
+            value = Integer.parseInt(values.getProperty(key));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(key + " must be a whole number, not '" + values.getProperty(key) + "'");
+        }
+        if (value < minimum) {
+            throw new IllegalArgumentException(key + " must be at least " + minimum + ", not " + value);
+        }
+        if (value > maximum) {
+            throw new IllegalArgumentException(key + " must be at most " + maximum + ", not " + value);
+        }
+        return value;
+    }
+
+    private long positiveLong(String key) {
+        long value = longValue(key);
+        if (value < 1) {
+            throw new IllegalArgumentException(key + " must be at least 1, not " + value);
+        }
+        return value;
+    }
+
+    private long longValue(String key) {
+        try {
+            return Long.parseLong(values.getProperty(key));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(key + " must be a whole number, not '" + values.getProperty(key) + "'");
+        }
+    }
+
+    private <E extends Enum<E>> E enumValue(String key, Class<E> type) {
+        try {
+            return Enum.valueOf(type, values.getProperty(key).toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            List<String> allowed = new ArrayList<>();
+            for (E constant : type.getEnumConstants()) {
+                allowed.add(constant.name());
+            }
+            throw new IllegalArgumentException(key + " must be one of " + allowed + ", not '" + values.getProperty(key) + "'");
+        }
+    }
+
+    public int getTickSize() { return tickSize; }
+    public int getNumberOfFarmers() { return numberOfFarmers; }
+    public int getNumberOfBuyers() { return numberOfBuyers; }
+    public int getSimulationDuration() { return simulationDuration; }
+    public boolean hasSeed() { return seed != null; }
+    public long getSeed() { return seed; }
+    public boolean isDeterministic() { return deterministic; }
+    public Engine getEngine() { return engine; }
+    public int getDeliveryFrequency() { return deliveryFrequency; }
+    public int getDeliverySize() { return deliverySize; }
+    public int getFarmerBreakChance() { return farmerBreakChance; }
+    public int getFarmerBreakMinDuration() { return farmerBreakMinDuration; }
+    public int getFarmerBreakMaxDuration() { return farmerBreakMaxDuration; }
+    public int getFarmerMaxAnimals() { return farmerMaxAnimals; }
+    public int getWalkBaseTicks() { return walkBaseTicks; }
+    public int getWalkTicksPerAnimal() { return walkTicksPerAnimal; }
+    public int getReturnTicks() { return returnTicks; }
+    public StockingPolicy.Kind getStockingPolicy() { return stockingPolicy; }
+    public int getRouteExactMaxFields() { return routeExactMaxFields; }
+    public int getFieldCapacity() { return fieldCapacity; }
+    public int getFieldInitialAnimalCount() { return fieldInitialAnimalCount; }
+    public FieldSync.Kind getFieldSync() { return fieldSync; }
+    public int getBuyerMaxWait() { return buyerMaxWait; }
+    public int getBuyerMaxCooldown() { return buyerMaxCooldown; }
+    public Field.QueuePolicy getBuyerQueuePolicy() { return buyerQueuePolicy; }
+    public Farm.EnclosurePolicy getEnclosurePolicy() { return enclosurePolicy; }
+    public int getLogBufferCapacity() { return logBufferCapacity; }
+    public AsyncLogWriter.Backpressure getLogBackpressure() { return logBackpressure; }
+    public int getLogSampleRate() { return logSampleRate; }
+    public boolean isSnapshotBinary() { return snapshotBinary; }
+    public int getSnapshotBufferBytes() { return snapshotBufferBytes; }
+    public long getSnapshotMaxBytes() { return snapshotMaxBytes; }
+    public int getSnapshotMaxFiles() { return snapshotMaxFiles; }
+    public long getSnapshotFlushMillis() { return snapshotFlushMillis; }
+    public int getGuiRefreshFps() { return guiRefreshFps; }
+    public boolean isMetricsReport() { return metricsReport; }
+    public String getMetricsFile() { return metricsFile; }
+    public int getMetricsInterval() { return metricsInterval; }
+    public boolean isMetricsLocks() { return metricsLocks; }
+}
@@ -0,0 +1,82 @@
+import java.util.concurrent.atomic.LongAdder;
+
+// Running totals for one farm, used to compare runs (see ExperimentRunner).
+// Agents record into striped LongAdders, so recording never contends between agents. The
+// totals are metrics of the farm's MetricsRegistry, so they also appear in its report.
+public class SimulationStats {
+    // Waits longer than this are counted as this long in the percentiles
+    private static final int MAX_RECORDED_WAIT = 4096;
+
+    private final LongAdder purchases;
+    private final LongAdder purchaseWaitTicks;
+    private final LongAdder giveUps;
+    private final LongAdder deliveries;
+    private final LongAdder animalsDelivered;
+    private final LongAdder animalsStocked;
+    private final TickHistogram purchaseWaits;
+
+    public SimulationStats() {
+        this(new MetricsRegistry());
+    }
+
+    public SimulationStats(MetricsRegistry metrics) {
+        purchases = metrics.counter("buyer.purchases");
+        purchaseWaitTicks = metrics.counter("buyer.purchase_wait_ticks");
+        giveUps = metrics.counter("buyer.give_ups");
+        deliveries = metrics.counter("delivery.count");
+        animalsDelivered = metrics.counter("delivery.animals");
+        animalsStocked = metrics.counter("farmer.animals_stocked");
+        purchaseWaits = metrics.histogram("buyer.purchase_wait", MAX_RECORDED_WAIT);
+    }
+
+    public void recordPurchase(int waitedTicks) {
+        purchases.increment();
+        purchaseWaitTicks.add(waitedTicks);
+        purchaseWaits.record(waitedTicks);
+    }
+
+    public void recordGiveUp() {
+        giveUps.increment();
+    }
+
+    public void recordDelivery(int animals) {
+        deliveries.increment();
+        animalsDelivered.add(animals);
+    }
+
+    public void recordStocked(int animals) {
+        animalsStocked.add(animals);
+    }
+
+    public long getPurchases() {
+        return purchases.sum();
+    }
+
+    public long getGiveUps() {
+        return giveUps.sum();
+    }
+
+    // Average ticks a buyer waited before buying, 0 if nothing was bought
+    public double getMeanPurchaseWait() {
+        long count = purchases.sum();
+        return (count == 0) ? 0 : (double) purchaseWaitTicks.sum() / count;
+    }
+
+    // Ticks waited by the given fraction of the buyers who bought, e.g. 0.99 for the p99.
+    // Buyers who gave up are not included (see getGiveUps).
+    public int getPurchaseWaitPercentile(double fraction) {
+        return purchaseWaits.percentile(fraction);
+    }
+
+    public long getDeliveries() {
+        return deliveries.sum();
+    }
+
+    public long getAnimalsDelivered() {
+        return animalsDelivered.sum();
+    }
+
+    public long getAnimalsStocked() {
+        return animalsStocked.sum();
+    }
+}
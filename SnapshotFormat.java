@@ -0,0 +1,59 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+// Layout of the binary world-state log shared by BinarySnapshotWriter and SnapshotReader.
+//
+//   file   := MAGIC version:int frame*
+//   frame  := type:byte tick:int length:int payload[length]
+//   payload:= strings enclosure fields farmers buyers
+//   strings:= n:varint (utf8Length:varint bytes)*   new dictionary entries, ids continue from
+//                                                    the previous frame
+//   enclosure := n:int (nameId:varint count:zigzag)*
+//   fields    := n:int (nameId:varint count:zigzag stocked:byte)*
+//   farmers / buyers := n:int (nameId:varint code:byte fieldNameId+1:varint a:varint b:varint)*
+//                       code is the Activity ordinal, fieldNameId+1 is 0 for no field
+//
+// A KEY frame lists every entry with absolute values. A DELTA frame lists only the entries
+// that changed since the previous tick, with counts stored as the difference from the previous
+// value. Every KEYFRAME_INTERVAL ticks a KEY frame is written so a reader can seek to any tick
+// by replaying at most KEYFRAME_INTERVAL - 1 deltas.
+final class SnapshotFormat {
+    static final byte[] MAGIC = "FARMSNAP".getBytes(StandardCharsets.US_ASCII);
+    static final int VERSION = 2;
+    static final byte KEY_FRAME = 0;
+    static final byte DELTA_FRAME = 1;
+    static final int FRAME_HEADER_BYTES = 9;
+    static final int KEYFRAME_INTERVAL = 1000;
+
+    private SnapshotFormat() {
+    }
+
+    static ByteBuffer putVarInt(ByteBuffer buffer, int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        return buffer.put((byte) value);
+    }
+
+    static int getVarInt(ByteBuffer buffer) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    static ByteBuffer putZigZag(ByteBuffer buffer, int value) {
+        return putVarInt(buffer, (value << 1) ^ (value >> 31));
+    }
+
+    static int getZigZag(ByteBuffer buffer) {
+        int raw = getVarInt(buffer);
+        return (raw >>> 1) ^ -(raw & 1);
+    }
+}
@@ -0,0 +1,129 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+// Persistent sink for the per-tick world-state log.
+// The file stays open for the whole run; snapshots are encoded into a direct buffer and only
+// reach the FileChannel when the buffer fills up or the flush interval has passed. Once the
+// file grows past maxFileBytes it is rotated (log -> log.1 -> log.2 ...) and a fresh one opened.
+final class SnapshotLogSink {
+    private final Path path;
+    private final long maxFileBytes;
+    private final int maxRotatedFiles;
+    private final long flushIntervalNanos;
+    private final ByteBuffer buffer;
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+    private FileChannel channel;
+    private long fileBytes;     // Bytes in the current file, including the unflushed buffer
+    private long lastFlushNanos = System.nanoTime();
+    private boolean closed = false;
+
+    SnapshotLogSink(String path, int bufferBytes, long maxFileBytes, int maxRotatedFiles, long flushIntervalMillis)
+            throws IOException {
+        this.path = Paths.get(path);
+        this.maxFileBytes = maxFileBytes;
+        this.maxRotatedFiles = maxRotatedFiles;
+        this.flushIntervalNanos = flushIntervalMillis * 1_000_000L;
+        this.buffer = ByteBuffer.allocateDirect(bufferBytes);
+        openFresh();
+    }
+
+    private void openFresh() throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        fileBytes = 0;
+    }
+
+    // Append text, flushing when the buffer is full or the flush interval has elapsed
+    synchronized void write(CharSequence text) throws IOException {
+        if (closed) return;
+        CharBuffer chars = CharBuffer.wrap(text);
+        encoder.reset();
+        while (true) {
+            int before = buffer.position();
+            CoderResult result = encoder.encode(chars, buffer, true);
+            fileBytes += buffer.position() - before;
+            if (!result.isOverflow()) break;
+            drainBuffer();
+        }
+        afterWrite();
+    }
+
+    // Append raw bytes, used for binary snapshot formats
+    synchronized void write(ByteBuffer bytes) throws IOException {
+        if (closed) return;
+        fileBytes += bytes.remaining();
+        if (bytes.remaining() > buffer.remaining()) {
+            drainBuffer();
+            if (bytes.remaining() > buffer.capacity()) {
+                while (bytes.hasRemaining()) {
+                    channel.write(bytes);
+                }
+                afterWrite();
+                return;
+            }
+        }
+        buffer.put(bytes);
+        afterWrite();
+    }
+
+    private void afterWrite() throws IOException {
+        long now = System.nanoTime();
+        if (now - lastFlushNanos >= flushIntervalNanos) {
+            drainBuffer();
+            lastFlushNanos = now;
+        }
+        if (fileBytes >= maxFileBytes) {
+            rotate();
+        }
+    }
+
+    private void drainBuffer() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    // Shift log.(n-1) -> log.n ... log -> log.1, then start a new empty log
+    private void rotate() throws IOException {
+        drainBuffer();
+        channel.close();
+        if (maxRotatedFiles > 0) {
+            for (int i = maxRotatedFiles - 1; i >= 1; i--) {
+                Path older = Paths.get(path + "." + i);
+                if (Files.exists(older)) {
+                    Files.move(older, Paths.get(path + "." + (i + 1)), StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+            Files.move(path, Paths.get(path + ".1"), StandardCopyOption.REPLACE_EXISTING);
+        }
+        openFresh();
+    }
+
+    // Write out anything still buffered
+    synchronized void flush() throws IOException {
+        if (closed) return;
+        drainBuffer();
+        lastFlushNanos = System.nanoTime();
+    }
+
+    // Flush, sync to disk and close; later writes are ignored
+    synchronized void close() throws IOException {
+        if (closed) return;
+        drainBuffer();
+        channel.force(false);
+        channel.close();
+        closed = true;
+    }
+}
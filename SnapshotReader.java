@@ -0,0 +1,183 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Reads a binary world-state log written by BinarySnapshotWriter.
+// Opening the file scans the frame headers once to index the key frames and collect the string
+// dictionary; readAt(tick) then seeks to the nearest key frame at or before the tick and
+// replays the deltas up to it.
+//
+// Usage: java SnapshotReader <file> <tick> [tick...]   prints each tick in the text log format
+public class SnapshotReader implements AutoCloseable {
+    private final FileChannel channel;
+    private final TreeMap<Integer, Long> keyFrames = new TreeMap<>(); // Tick -> file offset
+    private final List<String> dictionary = new ArrayList<>();
+    private int firstTick = -1;
+    private int lastTick = -1;
+
+    public SnapshotReader(String path) throws IOException {
+        channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ);
+        ByteBuffer header = readFully(0, SnapshotFormat.MAGIC.length + 4);
+        byte[] magic = new byte[SnapshotFormat.MAGIC.length];
+        header.get(magic);
+        if (!Arrays.equals(magic, SnapshotFormat.MAGIC) || header.getInt() != SnapshotFormat.VERSION) {
+            channel.close();
+            throw new IOException(path + " is not a farm snapshot log");
+        }
+        scan(SnapshotFormat.MAGIC.length + 4);
+    }
+
+    // Index key frames and load the dictionary; a truncated last frame (e.g. after a crash) is ignored
+    private void scan(long offset) throws IOException {
+        long size = channel.size();
+        while (offset + SnapshotFormat.FRAME_HEADER_BYTES <= size) {
+            ByteBuffer header = readFully(offset, SnapshotFormat.FRAME_HEADER_BYTES);
+            byte type = header.get();
+            int tick = header.getInt();
+            int length = header.getInt();
+            long payloadOffset = offset + SnapshotFormat.FRAME_HEADER_BYTES;
+            if (payloadOffset + length > size) {
+                break;
+            }
+            readStrings(readFully(payloadOffset, length));
+            if (type == SnapshotFormat.KEY_FRAME) {
+                keyFrames.put(tick, offset);
+            }
+            if (firstTick < 0) {
+                firstTick = tick;
+            }
+            lastTick = tick;
+            offset = payloadOffset + length;
+        }
+    }
+
+    public int getFirstTick() {
+        return firstTick;
+    }
+
+    public int getLastTick() {
+        return lastTick;
+    }
+
+    // Rebuild the world state as it was at the given tick (or the last logged tick before it)
+    public WorldSnapshot readAt(int tick) throws IOException {
+        Map.Entry<Integer, Long> key = keyFrames.floorEntry(tick);
+        if (key == null) {
+            throw new IOException("No snapshot at or before tick " + tick);
+        }
+        Map<String, Integer> enclosure = new LinkedHashMap<>();
+        Map<String, WorldState.FieldState> fields = new LinkedHashMap<>();
+        Map<String, String> farmers = new LinkedHashMap<>();
+        Map<String, String> buyers = new LinkedHashMap<>();
+
+        int stateTick = key.getKey();
+        long offset = key.getValue();
+        long size = channel.size();
+        while (offset + SnapshotFormat.FRAME_HEADER_BYTES <= size) {
+            ByteBuffer header = readFully(offset, SnapshotFormat.FRAME_HEADER_BYTES);
+            header.get(); // Frame type: key frames have absolute values relative to empty maps
+            int frameTick = header.getInt();
+            int length = header.getInt();
+            if (frameTick > tick || offset + SnapshotFormat.FRAME_HEADER_BYTES + length > size) {
+                break;
+            }
+            ByteBuffer payload = readFully(offset + SnapshotFormat.FRAME_HEADER_BYTES, length);
+            readStrings(null, payload);
+            applyCounts(payload, enclosure);
+            applyFields(payload, fields);
+            applyActivities(payload, farmers);
+            applyActivities(payload, buyers);
+            stateTick = frameTick;
+            offset += SnapshotFormat.FRAME_HEADER_BYTES + length;
+        }
+        return new WorldSnapshot(stateTick, enclosure, fields, farmers, buyers);
+    }
+
+    private void readStrings(ByteBuffer payload) {
+        readStrings(dictionary, payload);
+    }
+
+    // Reads the frame's new dictionary entries, adding them to target unless it is null
+    private static void readStrings(List<String> target, ByteBuffer payload) {
+        int count = SnapshotFormat.getVarInt(payload);
+        for (int i = 0; i < count; i++) {
+            int length = SnapshotFormat.getVarInt(payload);
+            if (target != null) {
+                target.add(new String(payload.array(), payload.position(), length, StandardCharsets.UTF_8));
+            }
+            payload.position(payload.position() + length);
+        }
+    }
+
+    private void applyCounts(ByteBuffer payload, Map<String, Integer> enclosure) {
+        int entries = payload.getInt();
+        for (int i = 0; i < entries; i++) {
+            String name = dictionary.get(SnapshotFormat.getVarInt(payload));
+            enclosure.put(name, enclosure.getOrDefault(name, 0) + SnapshotFormat.getZigZag(payload));
+        }
+    }
+
+    private void applyFields(ByteBuffer payload, Map<String, WorldState.FieldState> fields) {
+        int entries = payload.getInt();
+        for (int i = 0; i < entries; i++) {
+            String name = dictionary.get(SnapshotFormat.getVarInt(payload));
+            WorldState.FieldState previous = fields.get(name);
+            int count = ((previous == null) ? 0 : previous.animalCount()) + SnapshotFormat.getZigZag(payload);
+            fields.put(name, new WorldState.FieldState(count, payload.get() != 0));
+        }
+    }
+
+    // Activities are stored as codes and rendered to their display text here
+    private void applyActivities(ByteBuffer payload, Map<String, String> activities) {
+        Activity[] codes = Activity.values();
+        int entries = payload.getInt();
+        for (int i = 0; i < entries; i++) {
+            String name = dictionary.get(SnapshotFormat.getVarInt(payload));
+            Activity activity = codes[payload.get()];
+            int fieldNameId = SnapshotFormat.getVarInt(payload);
+            String fieldName = (fieldNameId == 0) ? "" : dictionary.get(fieldNameId - 1);
+            int a = SnapshotFormat.getVarInt(payload);
+            int b = SnapshotFormat.getVarInt(payload);
+            activities.put(name, activity.render(fieldName, a, b));
+        }
+    }
+
+    private ByteBuffer readFully(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of snapshot log");
+            }
+        }
+        return buffer.flip();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: java SnapshotReader <file> <tick> [tick...]");
+            return;
+        }
+        try (SnapshotReader reader = new SnapshotReader(args[0])) {
+            System.out.println("Ticks " + reader.getFirstTick() + " to " + reader.getLastTick());
+            for (int i = 1; i < args.length; i++) {
+                WorldSnapshot snapshot = reader.readAt(Integer.parseInt(args[i]));
+                System.out.print(FarmLogger.formatWorldState(snapshot.tick(), snapshot.enclosureState(),
+                        snapshot.fieldStates(), snapshot.farmerActivities(), snapshot.buyerActivities()));
+            }
+        }
+    }
+}
@@ -0,0 +1,71 @@
+import java.util.ArrayList;
+import java.util.List;
+
+// How a farmer orders the fields of its load (farmer.stocking.policy).
+// A policy ranks the animal types in the load from a FieldSnapshot taken once when the farmer
+// has its load, so ranking takes no locks and every comparison sees the same numbers. A type
+// left out of the order is not stocked this trip: the farmer carries it back to the enclosure,
+// as it does with animals that no longer fit into their field.
+interface StockingPolicy {
+    // The built-in policies
+    enum Kind {
+        WAITING_FIRST,   // Fields with waiting buyers, then the emptiest (the original rule)
+        SHORTEST_WALK,   // The largest group first, so the rest of the route is walked lighter
+        LARGEST_DEFICIT, // The field whose waiting buyers outnumber its animals the most
+        DEMAND_FORECAST, // The field expected to be shortest when the farmer gets there
+        PLANNED_ROUTE    // The route RoutePlanner finds cheapest in ticks and buyer waiting
+    }
+
+    // The fields as the farmer saw them, indexed by field id (AnimalType ordinal). demandPerTick
+    // is a moving average of how many buyers come to the field per tick.
+    record FieldSnapshot(int[] counts, int[] waitingBuyers, double[] demandPerTick, int capacity) {
+    }
+
+    // A rank for one type of the load; lower is stocked first
+    interface Priority {
+        double of(AnimalType type, int[] load, FieldSnapshot fields, SimulationConfig config);
+    }
+
+    // The animal types to stock this trip, in the order their fields should be visited
+    List<AnimalType> order(int[] load, FieldSnapshot fields, SimulationConfig config);
+
+    static StockingPolicy of(Kind kind) {
+        return switch (kind) {
+            case WAITING_FIRST -> byPriority((type, load, fields, config) -> {
+                int id = type.ordinal();
+                double stockRatio = (double) fields.counts()[id] / fields.capacity();
+                return (fields.waitingBuyers()[id] > 0) ? stockRatio - 2 : stockRatio;
+            });
+            case SHORTEST_WALK -> byPriority((type, load, fields, config) -> -load[type.ordinal()]);
+            case LARGEST_DEFICIT -> byPriority((type, load, fields, config) ->
+                    fields.counts()[type.ordinal()] - fields.waitingBuyers()[type.ordinal()]);
+            case DEMAND_FORECAST -> byPriority((type, load, fields, config) -> {
+                // Animals left when the farmer could first get there: stock, less the buyers
+                // already waiting and those expected during the walk with the whole load
+                int id = type.ordinal();
+                return fields.counts()[id] - fields.waitingBuyers()[id]
+                        - fields.demandPerTick()[id] * FarmRules.walkTicks(config, AnimalType.total(load));
+            });
+            case PLANNED_ROUTE -> RoutePlanner::plan;
+        };
+    }
+
+    // Visits every type present in the load, lowest priority first; types of equal priority
+    // keep AnimalType order, so the order is deterministic
+    static StockingPolicy byPriority(Priority priority) {
+        return (load, fields, config) -> {
+            List<AnimalType> types = new ArrayList<>();
+            for (AnimalType type : AnimalType.values()) {
+                if (load[type.ordinal()] > 0) {
+                    types.add(type);
+                }
+            }
+            double[] priorities = new double[AnimalType.COUNT];
+            for (AnimalType type : types) {
+                priorities[type.ordinal()] = priority.of(type, load, fields, config);
+            }
+            types.sort((a, b) -> Double.compare(priorities[a.ordinal()], priorities[b.ordinal()]));
+            return types;
+        };
+    }
+}
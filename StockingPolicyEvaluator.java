@@ -0,0 +1,185 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.ToDoubleFunction;
+
+// Offline comparison of the farmer stocking policies (farmer.stocking.policy, see StockingPolicy).
+// Every policy runs on the same workloads: the same configuration and the same seeds, so the
+// deliveries and buyer choices only differ where the policy's choices change them. Runs use the
+// EventLoopEngine, which is deterministic and needs no thread per agent, and are spread over a
+// ForkJoinPool. The policies are then ranked by mean and p99 buyer wait and by farmer busy time
+// (walking and stocking), lower being better for each, and listed by the sum of their ranks.
+//
+// Usage: java StockingPolicyEvaluator [--runs=20] [--parallelism=<cores>] [--seed=1]
+//                                     [--policies=<policy>,<policy>...] [--config=<file>] [--<key>=<value>]...
+// e.g. --policies=WAITING_FIRST,DEMAND_FORECAST --buyers=30 --delivery.frequency=20
+class StockingPolicyEvaluator {
+    // What one run of a policy produced
+    record RunResult(StockingPolicy.Kind policy, long seed, long purchases, long giveUps, double meanWait,
+                     int p99Wait, double busyPercent) {
+    }
+
+    // The runs of one policy averaged, with its rank for each criterion (1 is best)
+    record Ranking(StockingPolicy.Kind policy, List<RunResult> runs, double meanWait, double p99Wait,
+                   double busyPercent, int meanWaitRank, int p99WaitRank, int busyRank) {
+        int totalRank() {
+            return meanWaitRank + p99WaitRank + busyRank;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int runs = 20;
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        long baseSeed = 1;
+        List<StockingPolicy.Kind> policies = new ArrayList<>(Arrays.asList(StockingPolicy.Kind.values()));
+        SimulationConfig config;
+        try {
+            for (String arg : args) {
+                if (arg.startsWith("--runs=")) {
+                    runs = Integer.parseInt(arg.substring("--runs=".length()));
+                } else if (arg.startsWith("--parallelism=")) {
+                    parallelism = Integer.parseInt(arg.substring("--parallelism=".length()));
+                } else if (arg.startsWith("--seed=")) {
+                    baseSeed = Long.parseLong(arg.substring("--seed=".length()));
+                } else if (arg.startsWith("--policies=")) {
+                    policies.clear();
+                    for (String name : arg.substring("--policies=".length()).split(",")) {
+                        policies.add(StockingPolicy.Kind.valueOf(name.trim().toUpperCase(Locale.ROOT)));
+                    }
+                }
+            }
+            config = SimulationConfig.fromArgs(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println("Invalid configuration: " + e.getMessage());
+            return;
+        }
+
+        FarmLogger.setEnabled(false); // Nobody reads the events of hundreds of farms
+
+        long start = System.nanoTime();
+        List<RunResult> results = runAll(config, policies, runs, baseSeed, parallelism);
+        System.out.printf("%d runs of %d ticks (%d farmers, %d buyers) on %d workers in %.1f s%n", results.size(),
+                config.getSimulationDuration(), config.getNumberOfFarmers(), config.getNumberOfBuyers(), parallelism,
+                (System.nanoTime() - start) / 1e9);
+        report(rank(policies, results));
+    }
+
+    // Runs every policy with seeds baseSeed, baseSeed + 1, ...
+    static List<RunResult> runAll(SimulationConfig config, List<StockingPolicy.Kind> policies, int runs,
+                                  long baseSeed, int parallelism) throws Exception {
+        List<Callable<RunResult>> tasks = new ArrayList<>();
+        for (StockingPolicy.Kind policy : policies) {
+            SimulationConfig policyConfig = config.with("farmer.stocking.policy", policy.name());
+            for (int run = 0; run < runs; run++) {
+                long seed = baseSeed + run;
+                tasks.add(() -> runOnce(policyConfig, seed));
+            }
+        }
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            List<RunResult> results = new ArrayList<>();
+            for (Future<RunResult> future : pool.invokeAll(tasks)) {
+                results.add(future.get());
+            }
+            return results;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    // One complete simulation on the calling thread, isolated from every other run
+    static RunResult runOnce(SimulationConfig config, long seed) {
+        WorldState worldState = new WorldState();
+        Farm farm = new Farm(worldState, config, seed);
+        farm.addField();
+        TickManager tickManager = new TickManager(config.getTickSize(), TickManager.Mode.VIRTUAL, worldState);
+        EventLoopEngine engine = new EventLoopEngine(farm, tickManager);
+        engine.addDeliveryManager();
+        for (int i = 0; i < config.getNumberOfFarmers(); i++) {
+            engine.addFarmer(String.valueOf(i + 1));
+        }
+        for (int i = 0; i < config.getNumberOfBuyers(); i++) {
+            engine.addBuyer(String.valueOf(i + 1));
+        }
+        engine.runUntil(config.getSimulationDuration());
+        tickManager.stopTicks();
+
+        SimulationStats stats = worldState.getStats();
+        return new RunResult(config.getStockingPolicy(), seed, stats.getPurchases(), stats.getGiveUps(),
+                stats.getMeanPurchaseWait(), stats.getPurchaseWaitPercentile(0.99),
+                100 * worldState.getFarmerUtilisation());
+    }
+
+    // Averages the runs of each policy and ranks the policies on each criterion
+    static List<Ranking> rank(List<StockingPolicy.Kind> policies, List<RunResult> results) {
+        List<List<RunResult>> byPolicy = new ArrayList<>();
+        for (StockingPolicy.Kind policy : policies) {
+            byPolicy.add(results.stream().filter(r -> r.policy() == policy).toList());
+        }
+        int[] meanWaitRanks = ranks(byPolicy, RunResult::meanWait);
+        int[] p99WaitRanks = ranks(byPolicy, RunResult::p99Wait);
+        int[] busyRanks = ranks(byPolicy, RunResult::busyPercent);
+
+        List<Ranking> rankings = new ArrayList<>();
+        for (int i = 0; i < policies.size(); i++) {
+            List<RunResult> runs = byPolicy.get(i);
+            rankings.add(new Ranking(policies.get(i), runs, mean(runs, RunResult::meanWait),
+                    mean(runs, RunResult::p99Wait), mean(runs, RunResult::busyPercent),
+                    meanWaitRanks[i], p99WaitRanks[i], busyRanks[i]));
+        }
+        rankings.sort(Comparator.comparingInt(Ranking::totalRank).thenComparingDouble(Ranking::meanWait));
+        return rankings;
+    }
+
+    // 1 for the policy with the lowest mean of the metric, 2 for the next...; equal means share a rank
+    private static int[] ranks(List<List<RunResult>> byPolicy, ToDoubleFunction<RunResult> metric) {
+        int[] ranks = new int[byPolicy.size()];
+        for (int i = 0; i < ranks.length; i++) {
+            double value = mean(byPolicy.get(i), metric);
+            ranks[i] = 1;
+            for (List<RunResult> other : byPolicy) {
+                if (mean(other, metric) < value) {
+                    ranks[i]++;
+                }
+            }
+        }
+        return ranks;
+    }
+
+    private static void report(List<Ranking> rankings) {
+        System.out.printf("%-16s %5s %20s %18s %16s %16s %16s %6s%n",
+                "policy", "runs", "purchases", "give_ups", "mean_wait (rank)", "p99_wait (rank)", "busy% (rank)",
+                "total");
+        for (Ranking ranking : rankings) {
+            List<RunResult> runs = ranking.runs();
+            System.out.printf("%-16s %5d %20s %18s %16s %16s %16s %6d%n", ranking.policy(), runs.size(),
+                    meanAndInterval(runs, RunResult::purchases),
+                    meanAndInterval(runs, RunResult::giveUps),
+                    String.format("%.2f (%d)", ranking.meanWait(), ranking.meanWaitRank()),
+                    String.format("%.1f (%d)", ranking.p99Wait(), ranking.p99WaitRank()),
+                    String.format("%.1f (%d)", ranking.busyPercent(), ranking.busyRank()),
+                    ranking.totalRank());
+        }
+    }
+
+    private static double mean(List<RunResult> runs, ToDoubleFunction<RunResult> metric) {
+        return runs.stream().mapToDouble(metric).average().orElse(0);
+    }
+
+    // "mean +- half-width" of a normal-approximation 95% confidence interval
+    private static String meanAndInterval(List<RunResult> runs, ToDoubleFunction<RunResult> metric) {
+        double mean = mean(runs, metric);
+        double variance = 0;
+        for (RunResult run : runs) {
+            double d = metric.applyAsDouble(run) - mean;
+            variance += d * d;
+        }
+        variance = (runs.size() > 1) ? variance / (runs.size() - 1) : 0;
+        return String.format("%.1f +- %.1f", mean, 1.96 * Math.sqrt(variance / runs.size()));
+    }
+}
@@ -0,0 +1,64 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Distribution of a duration measured in ticks, e.g. how long buyers waited.
+// One counter per tick value up to a limit, with larger values counted in the last bucket, so
+// recording is a single atomic increment and percentiles are exact below the limit.
+public class TickHistogram {
+    private final AtomicLongArray counts;
+
+    public TickHistogram(int maxTicks) {
+        counts = new AtomicLongArray(maxTicks + 1);
+    }
+
+    public void record(int ticks) {
+        counts.incrementAndGet(Math.max(0, Math.min(ticks, counts.length() - 1)));
+    }
+
+    public long getCount() {
+        long total = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            total += counts.get(i);
+        }
+        return total;
+    }
+
+    // Average of the samples (values past the limit count as the limit), 0 if nothing was recorded
+    public double mean() {
+        long total = 0;
+        long sum = 0;
+        for (int ticks = 0; ticks < counts.length(); ticks++) {
+            long count = counts.get(ticks);
+            total += count;
+            sum += count * ticks;
+        }
+        return (total == 0) ? 0 : (double) sum / total;
+    }
+
+    // The largest value recorded, 0 if nothing was recorded
+    public int max() {
+        for (int ticks = counts.length() - 1; ticks > 0; ticks--) {
+            if (counts.get(ticks) != 0) {
+                return ticks;
+            }
+        }
+        return 0;
+    }
+
+    // The smallest value that at least the given fraction (0..1) of the samples do not exceed,
+    // 0 if nothing was recorded
+    public int percentile(double fraction) {
+        long total = getCount();
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(fraction * total));
+        long seen = 0;
+        for (int ticks = 0; ticks < counts.length(); ticks++) {
+            seen += counts.get(ticks);
+            if (seen >= rank) {
+                return ticks;
+            }
+        }
+        return counts.length() - 1;
+    }
+}
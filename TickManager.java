@@ -1,70 +1,408 @@
 // Manages the simulation ticks.
 // The TickManager generates ticks at a fixed interval, which can be paused and resumed.
+// In virtual-time mode the clock does not follow the wall clock at all: it jumps to the
+// next tick as soon as every registered agent (Farmer, Buyer, DeliveryManager) is parked
+// at its tick barrier or blocked on a simulation resource.
+//
+// Waiting agents are kept in a queue ordered by the tick they want to wake up at, and each
+// agent parks on its own Condition. Advancing the clock only signals the agents that are due, so
+// a farmer halfway through a 20-tick walk or a buyer sitting out its cooldown is not woken
+// (and context-switched) on every tick. A registered agent can also be woken before its tick
+// (wakeAgent), which is how a buyer waiting for stock parks until it gives up yet still comes
+// back on the tick after the field is restocked.
+//
+// Deterministic mode is virtual time in which the agents due at a tick take turns: they are
+// released one at a time in the order they registered, and the next one only runs once the
+// previous one has parked again. Together with seeded agents this makes every run with the
+// same seed produce the same events in the same order.
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class TickManager {
+    // How simulated time relates to real time
+    public enum Mode {
+        WALL_CLOCK, // One tick every tickSize milliseconds (used by the GUI)
+        VIRTUAL,    // Advance as fast as the agents allow
+        DETERMINISTIC // Virtual time, with the agents due at a tick run one at a time in registration order
+    }
+
+    private static final int NO_AGENT = -1;
+    private static final int NOT_PARKED = -1;
+
     private final int tickSize;
-    private int currentTick = 0;
+    private final Mode mode;
+    private volatile int currentTick = 0; // Written under lock, read freely
     private boolean running = true;
     private boolean paused = false;
-    private final WorldState worldState = WorldState.getInstance();
+    private final WorldState worldState;
     private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
 
-    // Constructor to set the tick size
+    private final ReentrantLock lock; // Timed when lock metrics are on, see MetricsRegistry.newLock
+    private final Condition clockCondition; // Virtual clock waits here for the agents
+    private final Condition tickCondition;  // awaitTick callers (Main) wait here
+    // Wakeup queue: target tick -> threads waiting for it, guarded by lock
+    private final TreeMap<Integer, TickWaiters> wakeups = new TreeMap<>();
+
+    // Barrier bookkeeping for virtual time, all guarded by lock
+    private int registeredAgents = 0; // Agents taking part in the simulation
+    private int parkedAgents = 0;     // Agents waiting in the wakeup queue
+    private int blockedAgents = 0;    // Agents blocked on a farm resource (field, enclosure)
+
+    // Registered agents, indexed by agent id, and turn taking for deterministic mode, guarded by lock
+    private final List<AgentSlot> agents = new ArrayList<>();
+    private final TreeSet<Integer> readyAgents = new TreeSet<>();  // Due this tick, waiting for their turn
+    private int turn = NO_AGENT;                                   // The agent allowed to run
+    private int holdTick;                                          // Deterministic clock stops here, see awaitTick
+
+    // The agents waiting for one particular tick
+    private static final class TickWaiters {
+        final List<Integer> agents = new ArrayList<>(); // Signalled one by one
+        int count;
+    }
+
+    // One registered agent
+    private static final class AgentSlot {
+        final Condition signal;
+        int parkedUntil = NOT_PARKED; // Its key in wakeups while parked
+        boolean wakeRequested;        // wakeAgent() came before the agent parked
+
+        AgentSlot(Condition signal) {
+            this.signal = signal;
+        }
+    }
+
+    // Constructor to set the tick size, keeps the original wall-clock behaviour
     public TickManager(int tickSize) {
+        this(tickSize, Mode.WALL_CLOCK);
+    }
+
+    public TickManager(int tickSize, Mode mode) {
+        this(tickSize, mode, WorldState.getInstance());
+    }
+
+    // A clock for the farm that owns worldState
+    public TickManager(int tickSize, Mode mode, WorldState worldState) {
         this.tickSize = tickSize;
+        this.mode = mode;
+        this.worldState = worldState;
+        this.lock = worldState.getMetrics().newLock("tick_manager", false);
+        this.clockCondition = lock.newCondition();
+        this.tickCondition = lock.newCondition();
+        this.holdTick = (mode == Mode.DETERMINISTIC) ? 0 : Integer.MAX_VALUE;
     }
 
     public void start() {
+        if (mode != Mode.WALL_CLOCK) {
+            scheduler.execute(this::runVirtualClock);
+            return;
+        }
         scheduler.scheduleAtFixedRate(() -> {
-            synchronized (TickManager.this) {
+            lock.lock();
+            try {
                 if (!paused && running) {
                     incrementTick();
                 }
+            } finally {
+                lock.unlock();
             }
         }, tickSize, tickSize, TimeUnit.MILLISECONDS);
     }
 
-    // Increment the current tick count and notify all waiting threads
-    public synchronized void incrementTick() {
-        currentTick++;
-        worldState.updateTick(currentTick);
-        notifyAll();
+    // Virtual clock: wait until every agent has reached its barrier, then advance
+    private void runVirtualClock() {
+        lock.lock();
+        try {
+            while (running) {
+                while (running && (paused || !allAgentsWaiting() || currentTick >= holdTick)) {
+                    if (currentTick >= holdTick && allAgentsWaiting()) {
+                        tickCondition.signalAll(); // Every agent is done with the held tick
+                    }
+                    clockCondition.await();
+                }
+                if (running) {
+                    incrementTick();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean allAgentsWaiting() {
+        return registeredAgents > 0 && parkedAgents + blockedAgents >= registeredAgents && turn == NO_AGENT;
+    }
+
+    // Deterministic mode: hand the turn to the lowest ready agent, or let the clock advance
+    private void passTurn() {
+        turn = readyAgents.isEmpty() ? NO_AGENT : readyAgents.pollFirst();
+        if (turn != NO_AGENT) {
+            agents.get(turn).signal.signal();
+        } else if (allAgentsWaiting()) {
+            clockCondition.signal();
+        }
+    }
+
+    // Increment the current tick count and wake only the threads due at the new tick
+    public void incrementTick() {
+        lock.lock();
+        try {
+            currentTick++;
+            worldState.updateTick(currentTick);
+            Map.Entry<Integer, TickWaiters> next;
+            while ((next = wakeups.firstEntry()) != null && next.getKey() <= currentTick) {
+                wakeups.pollFirstEntry();
+                TickWaiters waiters = next.getValue();
+                parkedAgents -= waiters.count;
+                for (int agentId : waiters.agents) {
+                    AgentSlot slot = agents.get(agentId);
+                    slot.parkedUntil = NOT_PARKED;
+                    if (mode == Mode.DETERMINISTIC) {
+                        readyAgents.add(agentId);
+                    } else {
+                        slot.signal.signal();
+                    }
+                }
+            }
+            if (mode == Mode.DETERMINISTIC && turn == NO_AGENT) {
+                passTurn();
+            }
+            tickCondition.signalAll();
+        } finally {
+            lock.unlock();
+        }
     }
 
     // Get the current tick count
-    public synchronized int getCurrentTick() {
+    public int getCurrentTick() {
         return currentTick;
     }
 
-    // Stop the tick generation and notify all waiting threads
-    public synchronized void stopTicks() {
-        running = false;
-        notifyAll();
-        scheduler.shutdownNow();
+    public Mode getMode() {
+        return mode;
+    }
+
+    // Called once per agent before its thread starts, so virtual time cannot run ahead of it.
+    // Returns the agent's id, which also fixes its place in the turn order of deterministic mode.
+    public int registerAgent() {
+        lock.lock();
+        try {
+            registeredAgents++;
+            agents.add(new AgentSlot(lock.newCondition()));
+            return agents.size() - 1;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Called when the agent with the given id finishes; passes its turn on in deterministic mode
+    public void deregisterAgent(int agentId) {
+        lock.lock();
+        try {
+            readyAgents.remove(agentId);
+            registeredAgents--;
+            clockCondition.signal();
+            if (turn == agentId) {
+                passTurn();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Brackets a call that may block on something other than the clock (e.g. a field being
+    // stocked by another farmer). While blocked, the agent does not hold virtual time back.
+    public void beginBlocking() {
+        lock.lock();
+        try {
+            blockedAgents++;
+            clockCondition.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void endBlocking() {
+        lock.lock();
+        try {
+            blockedAgents--;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Stop the tick generation and wake every waiting thread
+    public void stopTicks() {
+        lock.lock();
+        try {
+            running = false;
+            for (AgentSlot slot : agents) {
+                slot.signal.signal();
+            }
+            clockCondition.signalAll();
+            tickCondition.signalAll();
+            scheduler.shutdownNow();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean isRunning() {
+        lock.lock();
+        try {
+            return running;
+        } finally {
+            lock.unlock();
+        }
     }
 
     // Pause tick generation
-    public synchronized void pauseTicks() {
-        paused = true;
-        FarmLogger.logPaused(currentTick);
+    public void pauseTicks() {
+        lock.lock();
+        try {
+            paused = true;
+            FarmLogger.logPaused(currentTick);
+        } finally {
+            lock.unlock();
+        }
     }
 
     // Resume tick generation
-    public synchronized void resumeTicks() {
-        paused = false;
-        notifyAll();
-        FarmLogger.logResumed(currentTick);
+    public void resumeTicks() {
+        lock.lock();
+        try {
+            paused = false;
+            clockCondition.signal();
+            FarmLogger.logResumed(currentTick);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Blocks the agent until the clock moves past lastCheckedTick and returns the new tick. In
+    // deterministic mode it then also waits for its turn.
+    public int waitForNextTick(int agentId, int lastCheckedTick) throws InterruptedException {
+        return waitUntilTick(agentId, lastCheckedTick + 1);
     }
 
-    public synchronized int waitForNextTick(int lastCheckedTick) throws InterruptedException {
-        int currentTick = getCurrentTick();
-        if (lastCheckedTick == currentTick) {
-            wait();
+    // Parks the agent until targetTick, or until the tick after somebody calls wakeAgent for it,
+    // and returns the current tick. In deterministic mode it then also waits for its turn.
+    public int waitUntilTick(int agentId, int targetTick) throws InterruptedException {
+        lock.lock();
+        try {
+            if (!running) {
+                throw new InterruptedException("Simulation stopped");
+            }
+            AgentSlot slot = agents.get(agentId);
+            if (slot.wakeRequested) {
+                slot.wakeRequested = false;
+                targetTick = Math.min(targetTick, currentTick + 1);
+            }
+            if (currentTick >= targetTick) {
+                return currentTick; // Keeps the turn
+            }
+            park(agentId, slot, targetTick);
+            parkedAgents++;
+            if (turn == agentId) {
+                passTurn();
+            } else if (mode != Mode.WALL_CLOCK && allAgentsWaiting()) {
+                clockCondition.signal(); // Last one to arrive lets the virtual clock advance
+            }
+            try {
+                while (slot.parkedUntil != NOT_PARKED || (mode == Mode.DETERMINISTIC && turn != agentId)) {
+                    if (!running) {
+                        throw new InterruptedException("Simulation stopped");
+                    }
+                    slot.signal.await();
+                }
+            } catch (InterruptedException e) {
+                // Still queued (not yet due), so take ourselves out of the barrier count
+                if (slot.parkedUntil != NOT_PARKED) {
+                    unpark(agentId, slot);
+                    parkedAgents--;
+                }
+                throw e;
+            }
+            return currentTick;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Brings a parked agent's wakeup forward to the next tick. If the agent is not parked yet, its
+    // next wait ends at the next tick instead. Safe to call from any thread.
+    public void wakeAgent(int agentId) {
+        lock.lock();
+        try {
+            AgentSlot slot = agents.get(agentId);
+            if (slot.parkedUntil == NOT_PARKED) {
+                slot.wakeRequested = true;
+            } else if (slot.parkedUntil > currentTick + 1) {
+                unpark(agentId, slot);
+                park(agentId, slot, currentTick + 1);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Drops a wakeAgent() that came after the agent was released, once what it was waiting for
+    // has been dealt with, so that it does not cut the agent's next wait short
+    public void clearWake(int agentId) {
+        lock.lock();
+        try {
+            agents.get(agentId).wakeRequested = false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void park(int agentId, AgentSlot slot, int targetTick) {
+        TickWaiters waiters = wakeups.get(targetTick);
+        if (waiters == null) {
+            waiters = new TickWaiters();
+            wakeups.put(targetTick, waiters);
+        }
+        waiters.count++;
+        waiters.agents.add(agentId);
+        slot.parkedUntil = targetTick;
+    }
+
+    private void unpark(int agentId, AgentSlot slot) {
+        TickWaiters waiters = wakeups.get(slot.parkedUntil);
+        waiters.count--;
+        waiters.agents.remove(Integer.valueOf(agentId));
+        if (waiters.count == 0) {
+            wakeups.remove(slot.parkedUntil);
+        }
+        slot.parkedUntil = NOT_PARKED;
+    }
+
+    // Used by Main to let the simulation run until the given tick has been reached.
+    // A deterministic clock only runs up to the tick somebody awaits, and this returns once every
+    // agent has finished that tick, so a run always stops at the same point.
+    public void awaitTick(int targetTick) throws InterruptedException {
+        lock.lock();
+        try {
+            if (mode == Mode.DETERMINISTIC && targetTick > holdTick) {
+                holdTick = targetTick;
+                clockCondition.signal();
+            }
+            while (running && (currentTick < targetTick || (mode == Mode.DETERMINISTIC && !allAgentsWaiting()))) {
+                tickCondition.await();
+            }
+        } finally {
+            lock.unlock();
         }
-        return getCurrentTick();
     }
 
 }
@@ -0,0 +1,177 @@
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+// A ReentrantLock that records its contention in a LockStats, handed out by
+// MetricsRegistry.newLock when lock timing is on. Only a thread's outermost acquisition is
+// timed. Awaiting one of its conditions releases the lock, so that time counts neither as
+// holding nor as waiting for it: the hold ends when await() is called and a new one starts
+// once await() has the lock back.
+class TimedLock extends ReentrantLock {
+    private static final long serialVersionUID = 1L;
+
+    private final transient LockStats stats;
+    private long holdStart; // Only used by the thread holding the lock
+
+    TimedLock(String name, boolean fair, MetricsRegistry metrics) {
+        super(fair);
+        this.stats = new LockStats(name, fair, this::getQueueLength, metrics);
+    }
+
+    LockStats getStats() {
+        return stats;
+    }
+
+    @Override
+    public void lock() {
+        if (isHeldByCurrentThread()) {
+            super.lock();
+            return;
+        }
+        int queued = getQueueLength();
+        boolean contended = queued > 0 || isLocked();
+        long start = System.nanoTime();
+        super.lock();
+        acquired(start, queued, contended);
+    }
+
+    @Override
+    public void lockInterruptibly() throws InterruptedException {
+        if (isHeldByCurrentThread()) {
+            super.lockInterruptibly();
+            return;
+        }
+        int queued = getQueueLength();
+        boolean contended = queued > 0 || isLocked();
+        long start = System.nanoTime();
+        super.lockInterruptibly();
+        acquired(start, queued, contended);
+    }
+
+    @Override
+    public boolean tryLock() {
+        if (isHeldByCurrentThread()) {
+            return super.tryLock();
+        }
+        long start = System.nanoTime();
+        if (!super.tryLock()) {
+            return false;
+        }
+        acquired(start, 0, false);
+        return true;
+    }
+
+    @Override
+    public boolean tryLock(long timeout, TimeUnit unit) throws InterruptedException {
+        if (isHeldByCurrentThread()) {
+            return super.tryLock(timeout, unit);
+        }
+        int queued = getQueueLength();
+        boolean contended = queued > 0 || isLocked();
+        long start = System.nanoTime();
+        if (!super.tryLock(timeout, unit)) {
+            return false;
+        }
+        acquired(start, queued, contended);
+        return true;
+    }
+
+    @Override
+    public void unlock() {
+        if (getHoldCount() == 1) {
+            stats.recordHold(System.nanoTime() - holdStart);
+        }
+        super.unlock();
+    }
+
+    @Override
+    public Condition newCondition() {
+        return new TimedCondition(super.newCondition());
+    }
+
+    private void acquired(long start, int queued, boolean contended) {
+        long now = System.nanoTime();
+        stats.recordAcquire(now - start, queued, contended);
+        holdStart = now;
+    }
+
+    // A condition of this lock whose waits end the current hold and start a new one
+    private final class TimedCondition implements Condition {
+        private final Condition condition;
+
+        TimedCondition(Condition condition) {
+            this.condition = condition;
+        }
+
+        private void releasing() {
+            if (isHeldByCurrentThread()) {
+                stats.recordHold(System.nanoTime() - holdStart);
+            }
+        }
+
+        private void reacquired() {
+            holdStart = System.nanoTime();
+        }
+
+        @Override
+        public void await() throws InterruptedException {
+            releasing();
+            try {
+                condition.await();
+            } finally {
+                reacquired();
+            }
+        }
+
+        @Override
+        public void awaitUninterruptibly() {
+            releasing();
+            try {
+                condition.awaitUninterruptibly();
+            } finally {
+                reacquired();
+            }
+        }
+
+        @Override
+        public long awaitNanos(long nanosTimeout) throws InterruptedException {
+            releasing();
+            try {
+                return condition.awaitNanos(nanosTimeout);
+            } finally {
+                reacquired();
+            }
+        }
+
+        @Override
+        public boolean await(long time, TimeUnit unit) throws InterruptedException {
+            releasing();
+            try {
+                return condition.await(time, unit);
+            } finally {
+                reacquired();
+            }
+        }
+
+        @Override
+        public boolean awaitUntil(Date deadline) throws InterruptedException {
+            releasing();
+            try {
+                return condition.awaitUntil(deadline);
+            } finally {
+                reacquired();
+            }
+        }
+
+        @Override
+        public void signal() {
+            condition.signal();
+        }
+
+        @Override
+        public void signalAll() {
+            condition.signalAll();
+        }
+    }
+}
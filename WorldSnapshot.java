@@ -0,0 +1,10 @@
+import java.util.Map;
+
+// An immutable copy of the world state at one tick, as written to or read back from the
+// binary snapshot log. Maps keep the order entries were first seen in.
+public record WorldSnapshot(int tick,
+                            Map<String, Integer> enclosureState,
+                            Map<String, WorldState.FieldState> fieldStates,
+                            Map<String, String> farmerActivities,
+                            Map<String, String> buyerActivities) {
+}
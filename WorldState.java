@@ -1,40 +1,90 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-
-import javax.swing.SwingUtilities;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
 
+// Shared view of the simulation for the GUI and the world-state log.
+// State is sharded into independent atomic cells, one per field, per enclosure animal type and
+// per agent, so writers never contend on a common lock: a field's cell is only written by
+// whoever holds that field's lock, and an agent's cell only by that agent.
+// Field and enclosure cells carry a stamp that changes on every write, which lets snapshot()
+// take a consistent copy of all cells without blocking writers (see snapshot()).
 public class WorldState {
-    // Maps to track activities of farmers and buyers
-    private final Map<String, String> farmerActivities = new ConcurrentHashMap<>(); // Using ConcurrentHashMap helps with performance over a synchronized HashMap or class
-    private final Map<String, String> buyerActivities = new ConcurrentHashMap<>();
-    private final Map<String, Integer> waitingBuyers = new ConcurrentHashMap<>();
-    private final Map<String, FieldState> fieldStates = new ConcurrentHashMap<>(); // Track field states (animal counts and being stocked status)
-    private final Map<String, Integer> enclosureState = new ConcurrentHashMap<>(); // Track enclosure state
+    // Field cell layout: stamp (31 bits) | being stocked (1 bit) | animal count (32 bits)
+    private static final int FIELD_STAMP_SHIFT = 33;
+    private static final long FIELD_STOCKING_BIT = 1L << 32;
+    // Enclosure cell: stamp in the high 32 bits plus the (signed) count, updated with one add
+    private static final long ENCLOSURE_STAMP = 1L << 32;
+    private static final int SNAPSHOT_ATTEMPTS = 8; // Collects tried before settling for the latest
+    private static final int MAX_RECORDED_BACKLOG = 4096; // Larger enclosure backlogs count as this
+    private static final double DEMAND_SMOOTHING = 1.0 / 50; // Weight of the latest tick in a field's demand rate
+
+    // Activities of farmers and buyers as packed codes, rendered to text only when displayed
+    private final ActivityTable farmerActivities = new ActivityTable();
+    private final ActivityTable buyerActivities = new ActivityTable();
+    private volatile List<String> fieldNames = Collections.emptyList(); // Indexed by field id
+    private final AtomicIntegerArray waitingBuyers = new AtomicIntegerArray(AnimalType.COUNT); // Indexed by field id
+    private final AtomicIntegerArray fieldVisits = new AtomicIntegerArray(AnimalType.COUNT);   // Indexed by field id
+    // Buyers per tick at each field as double bits, a moving average kept by the tick thread
+    private final AtomicLongArray demandRates = new AtomicLongArray(AnimalType.COUNT);
+    private final int[] lastFieldVisits = new int[AnimalType.COUNT]; // Only used by the tick thread
+    private final AtomicLongArray fieldCells = new AtomicLongArray(AnimalType.COUNT); // Indexed by field id
+    private final AtomicLongArray enclosureCells = new AtomicLongArray(AnimalType.COUNT); // Indexed by AnimalType
 
     private volatile int currentTick = 0; // Current tick
-    private FarmGUI gui; // GUI Reference
-    private static WorldState instance; // Singleton instance
+    private volatile FarmGUI gui; // GUI Reference
+    private final boolean logStates; // Whether each tick is written to the world-state log
+    private final MetricsRegistry metrics = new MetricsRegistry();
+    private final SimulationStats stats = new SimulationStats(metrics);
 
-    // Constructor
-    private WorldState() {
-        // Initialize log file using FarmLogger
-        FarmLogger.initializeLogFile();
-        
-        // Initialize animal types in enclosure
-        enclosureState.put("pigs", 0);
-        enclosureState.put("cows", 0);
-        enclosureState.put("sheep", 0);
-        enclosureState.put("llamas", 0);
-        enclosureState.put("chickens", 0);
+    // Sampled once per tick: what each farmer was doing, which fields were empty and how many
+    // animals waited in the enclosure (see sampleMetrics)
+    private final LongAdder[] farmerTicks = new LongAdder[Activity.values().length]; // Indexed by Activity
+    private final LongAdder farmerWalkingTicks = metrics.counter("farmer.ticks.walking");
+    private final LongAdder farmerStockingTicks = metrics.counter("farmer.ticks.stocking");
+    private final LongAdder farmerBreakTicks = metrics.counter("farmer.ticks.on_break");
+    private final LongAdder farmerIdleTicks = metrics.counter("farmer.ticks.idle");
+    private final LongAdder[] fieldEmptyTicks = new LongAdder[AnimalType.COUNT]; // Indexed by field id
+    private final TickHistogram enclosureBacklog = metrics.histogram("enclosure.backlog", MAX_RECORDED_BACKLOG);
+    private Writer metricsOut; // Periodic dump, only written by the tick thread once set
+    private boolean metricsJson;
+    private int metricsInterval;
+    private static WorldState instance; // Instance used by Main and the GUI
+
+    // A world state that is not logged, e.g. one of many farms in an experiment
+    public WorldState() {
+        this(false);
+    }
+
+    public WorldState(boolean logStates) {
+        this.logStates = logStates;
+        for (Activity activity : Activity.values()) {
+            farmerTicks[activity.ordinal()] = switch (activity) {
+                case MOVING_TO_FIELD, RETURNING_TO_ENCLOSURE -> farmerWalkingTicks;
+                case STOCKING, FINISHED_STOCKING -> farmerStockingTicks;
+                case ON_BREAK, ON_BREAK_REMAINING -> farmerBreakTicks;
+                default -> farmerIdleTicks;
+            };
+        }
+        if (logStates) {
+            // Initialize log file using FarmLogger
+            FarmLogger.initializeLogFile();
+        }
     }
     
-    // Singleton getter
+    // The logged world state of the interactive simulation
     public static synchronized WorldState getInstance() {
         if (instance == null) {
-            instance = new WorldState();
+            instance = new WorldState(true);
         }
         return instance;
     }
@@ -44,85 +94,224 @@ public class WorldState {
         this.gui = gui;
     }
 
-    // Common method for GUI updates
-    public void updateGUI() {
+    // Tell the GUI which of its panels (FarmGUI.FIELDS, FARMERS, ...) are out of date.
+    // This only sets bits; the GUI redraws those panels on its next frame.
+    public void updateGUI(int panels) {
+        FarmGUI gui = this.gui;
         if (gui != null) {
-            SwingUtilities.invokeLater(() -> gui.update());
+            gui.markDirty(panels);
         }
     }
     
-    // Update the current tick and log the state
-    public synchronized void updateTick(int tick) {
+    // Update the current tick and log the state; only the tick thread calls this
+    public void updateTick(int tick) {
         this.currentTick = tick;
+        sampleMetrics();
         logState();
+        if (metricsOut != null && tick % metricsInterval == 0) {
+            dumpMetrics(tick);
+        }
         
         // Update GUI if available
-        updateGUI();
+        updateGUI(FarmGUI.TICK);
     }
     
-    // Initialize field states
-    public void initializeField(String fieldName, int animalCount) {
-        fieldStates.put(fieldName, new FieldState(animalCount, false));
+    // Initialize field states; fieldId is the index the field's activities refer to
+    public synchronized void initializeField(int fieldId, String fieldName, int animalCount) {
+        List<String> names = new ArrayList<>(fieldNames);
+        while (names.size() <= fieldId) {
+            names.add(null);
+        }
+        names.set(fieldId, fieldName);
+        fieldEmptyTicks[fieldId] = metrics.counter("field." + fieldName + ".empty_ticks");
+        updateFieldState(fieldId, animalCount, false);
+        fieldNames = names;
     }
-    
-    // Update farmer activity 
-    public void updateFarmerActivity(String farmerName, String activity) {
-        farmerActivities.put(farmerName, activity);
+
+    public String getFieldName(int fieldId) {
+        return fieldNames.get(fieldId);
     }
-    
-    // Update buyer activity
-    public void updateBuyerActivity(String buyerName, String activity) {
-        buyerActivities.put(buyerName, activity);
+
+    // Register agents once; the returned id is used for all their activity updates
+    public int registerFarmer(String farmerName) {
+        return farmerActivities.register(farmerName);
+    }
+
+    public int registerBuyer(String buyerName) {
+        return buyerActivities.register(buyerName);
+    }
+
+    // Update farmer activity, e.g. (MOVING_TO_FIELD, cows id, 4) for "Moving to cows with 4 animals"
+    public void updateFarmerActivity(int farmerId, Activity activity, int fieldId, int count) {
+        farmerActivities.set(farmerId, Activity.pack(activity, fieldId, count, 0));
+        updateGUI(FarmGUI.FARMERS);
+    }
+
+    public void updateFarmerActivity(int farmerId, Activity activity) {
+        updateFarmerActivity(farmerId, activity, Activity.NO_FIELD, 0);
+    }
+
+    // Update buyer activity, e.g. (WAITING_FOR_FIELD, cows id, 3, 50) for "Waiting for cows (3/50)"
+    public void updateBuyerActivity(int buyerId, Activity activity, int fieldId, int waitedTicks, int maxWait) {
+        buyerActivities.set(buyerId, Activity.pack(activity, fieldId, waitedTicks, maxWait));
+        updateGUI(FarmGUI.BUYERS);
     }
     
     // Update field state
-    public void updateFieldState(String fieldName, int animalCount, boolean isBeingStocked) {
-        fieldStates.put(fieldName, new FieldState(animalCount, isBeingStocked));
+    public void updateFieldState(int fieldId, int animalCount, boolean isBeingStocked) {
+        long cell;
+        do {
+            cell = fieldCells.get(fieldId);
+        } while (!fieldCells.compareAndSet(fieldId, cell, nextFieldCell(cell, animalCount, isBeingStocked)));
+        updateGUI(FarmGUI.FIELDS);
+    }
+
+    // Update a field's animal count, keeping its being-stocked flag
+    public void updateFieldCount(int fieldId, int count) {
+        long cell;
+        do {
+            cell = fieldCells.get(fieldId);
+        } while (!fieldCells.compareAndSet(fieldId, cell, nextFieldCell(cell, count, (cell & FIELD_STOCKING_BIT) != 0)));
+        updateGUI(FarmGUI.FIELDS);
+    }
+
+    private static long nextFieldCell(long cell, int animalCount, boolean isBeingStocked) {
+        long stamp = (cell >>> FIELD_STAMP_SHIFT) + 1;
+        return (stamp << FIELD_STAMP_SHIFT) | (isBeingStocked ? FIELD_STOCKING_BIT : 0) | (animalCount & 0xFFFFFFFFL);
     }
     
-    // Add animals to enclosure
-    public void addAnimalsToEnclosure(List<String> animals) {
-        if (animals == null || animals.isEmpty()) return;
-        
-        // Concurrent hash map provides compute method for atomic updates
-        for (String animal : animals) {
-            enclosureState.compute(animal, (k, v) -> (v == null) ? 1 : v + 1);
+    // Add animals to enclosure, given as a count per AnimalType
+    public void addAnimalsToEnclosure(int[] animals) {
+        // One atomic add per type, however many animals were delivered
+        for (int type = 0; type < AnimalType.COUNT; type++) {
+            if (animals[type] != 0) {
+                enclosureCells.addAndGet(type, ENCLOSURE_STAMP + animals[type]);
+            }
         }
         
-        updateGUI();
+        updateGUI(FarmGUI.ENCLOSURE);
     }
 
-    // Remove animals from enclosure
-    public void removeAnimalsFromEnclosure(List<String> animals) {
-        if (animals == null || animals.isEmpty()) return;
-        // Again, methods provided by ConcurrentHashMap are super useful for maintaining atomicity
-        for (String animal : animals) {
-            enclosureState.compute(animal, (k, v) -> (v == null || v <= 0) ? 0 : v - 1);
+    // Remove animals from enclosure, given as a count per AnimalType
+    public void removeAnimalsFromEnclosure(int[] animals) {
+        for (int type = 0; type < AnimalType.COUNT; type++) {
+            if (animals[type] != 0) {
+                enclosureCells.addAndGet(type, ENCLOSURE_STAMP - animals[type]);
+            }
         }
         
-        updateGUI();
+        updateGUI(FarmGUI.ENCLOSURE);
     }
     
     // Getters for GUI to access data
+    // Rendered on demand from the packed activity codes
     public Map<String, String> getFarmerActivities() {
-        return Collections.unmodifiableMap(farmerActivities);
+        return Collections.unmodifiableMap(farmerActivities.render(this::getFieldName));
     }
     
     public Map<String, String> getBuyerActivities() {
-        return Collections.unmodifiableMap(buyerActivities);
+        return Collections.unmodifiableMap(buyerActivities.render(this::getFieldName));
     }
     
+    // The live activity tables, for views that render rows themselves (see ActivityListModel)
+    ActivityTable getFarmerActivityTable() {
+        return farmerActivities;
+    }
+
+    ActivityTable getBuyerActivityTable() {
+        return buyerActivities;
+    }
+
+    // Current state of every field keyed by name, in field id order; use snapshot() to read
+    // fields together with the enclosure consistently
     public Map<String, FieldState> getFieldStates() {
-        return Collections.unmodifiableMap(fieldStates);
+        return snapshot().fieldStates();
     }
     
+    // A copy of the enclosure counts keyed by animal name, in AnimalType order
     public Map<String, Integer> getEnclosureState() {
-        // Create a defensive copy to prevent concurrent modification
-        synchronized(enclosureState) {
-            return new HashMap<>(enclosureState);
-        }
+        return snapshot().enclosureState();
     }
     
+    // A copy of the whole world state as it was at one instant, taken without blocking writers.
+    // Cells are read twice ("double collect"); if nothing changed in between, and the stamps
+    // guarantee that a rewritten field or enclosure cell never looks unchanged, the copy is the
+    // state at the moment between the two reads. Otherwise it tries again a few times and then
+    // settles for the latest copy, in which each cell is still individually correct.
+    public Snapshot snapshot() {
+        Snapshot previous = collect();
+        for (int attempt = 1; attempt < SNAPSHOT_ATTEMPTS; attempt++) {
+            Snapshot current = collect();
+            if (current.sameCellsAs(previous)) {
+                return new Snapshot(current.tick(), current.enclosureCells(), current.fieldCells(),
+                        current.fieldNames(), current.farmers(), current.buyers(), true);
+            }
+            previous = current;
+        }
+        return previous;
+    }
+
+    private Snapshot collect() {
+        int tick = currentTick;
+        long[] enclosure = new long[AnimalType.COUNT];
+        for (int i = 0; i < enclosure.length; i++) {
+            enclosure[i] = enclosureCells.get(i);
+        }
+        List<String> names = fieldNames;
+        long[] fields = new long[names.size()];
+        for (int i = 0; i < fields.length; i++) {
+            fields[i] = fieldCells.get(i);
+        }
+        return new Snapshot(tick, enclosure, fields, names,
+                new ActivityTable.Snapshot(farmerActivities, farmerActivities.codes()),
+                new ActivityTable.Snapshot(buyerActivities, buyerActivities.codes()), false);
+    }
+
+    private static int enclosureCount(long cell) {
+        return (int) cell; // The low 32 bits are the signed count
+    }
+
+    // The world state at one instant, as returned by snapshot()
+    public record Snapshot(int tick, long[] enclosureCells, long[] fieldCells, List<String> fieldNames,
+                           ActivityTable.Snapshot farmers, ActivityTable.Snapshot buyers, boolean consistent) {
+        public int enclosureCount(AnimalType type) {
+            return WorldState.enclosureCount(enclosureCells[type.ordinal()]);
+        }
+
+        // Enclosure counts keyed by animal name, in AnimalType order
+        public Map<String, Integer> enclosureState() {
+            Map<String, Integer> counts = new LinkedHashMap<>();
+            for (AnimalType type : AnimalType.values()) {
+                counts.put(type.getName(), enclosureCount(type));
+            }
+            return counts;
+        }
+
+        // Field states keyed by field name, in field id order
+        public Map<String, FieldState> fieldStates() {
+            Map<String, FieldState> states = new LinkedHashMap<>();
+            for (int id = 0; id < fieldCells.length; id++) {
+                if (fieldNames.get(id) != null) {
+                    long cell = fieldCells[id];
+                    states.put(fieldNames.get(id), new FieldState((int) cell, (cell & FIELD_STOCKING_BIT) != 0));
+                }
+            }
+            return states;
+        }
+
+        public String fieldName(int fieldId) {
+            return fieldNames.get(fieldId);
+        }
+
+        private boolean sameCellsAs(Snapshot other) {
+            return tick == other.tick
+                    && Arrays.equals(enclosureCells, other.enclosureCells)
+                    && Arrays.equals(fieldCells, other.fieldCells)
+                    && Arrays.equals(farmers.codes(), other.farmers.codes())
+                    && Arrays.equals(buyers.codes(), other.buyers.codes());
+        }
+    }
+
     public int getCurrentTick() {
         return currentTick;
     }
@@ -131,16 +320,103 @@ public class WorldState {
         return gui;
     }
     
+    public SimulationStats getStats() {
+        return stats;
+    }
+
+    public MetricsRegistry getMetrics() {
+        return metrics;
+    }
+
+    // Share of the farmers' time spent walking or stocking, 0..1
+    public double getFarmerUtilisation() {
+        long working = farmerWalkingTicks.sum() + farmerStockingTicks.sum();
+        long total = working + farmerBreakTicks.sum() + farmerIdleTicks.sum();
+        return (total == 0) ? 0 : (double) working / total;
+    }
+
+    // The metrics report for the end of a run, with the farmers' time broken down
+    public String metricsReport() {
+        double total = farmerWalkingTicks.sum() + farmerStockingTicks.sum() + farmerBreakTicks.sum()
+                + farmerIdleTicks.sum();
+        double scale = (total == 0) ? 0 : 100 / total;
+        return "Metrics at tick " + currentTick + "\n" + metrics.report()
+                + String.format(Locale.ROOT,
+                        "farmer utilisation %.1f%% (walking %.1f%%, stocking %.1f%%, on break %.1f%%, idle %.1f%%)%n",
+                        100 * getFarmerUtilisation(), farmerWalkingTicks.sum() * scale,
+                        farmerStockingTicks.sum() * scale, farmerBreakTicks.sum() * scale,
+                        farmerIdleTicks.sum() * scale);
+    }
+
+    // Writes the metrics to out every intervalTicks ticks, as CSV rows or JSON lines (see
+    // MetricsRegistry), until finishMetricsDump. Call before the clock starts.
+    public void startMetricsDump(Writer out, boolean json, int intervalTicks) {
+        metricsOut = out;
+        metricsJson = json;
+        metricsInterval = intervalTicks;
+    }
+
+    // Writes the final values, unless they were just written, and closes the dump
+    public void finishMetricsDump() {
+        if (metricsOut == null) {
+            return;
+        }
+        if (currentTick % metricsInterval != 0) {
+            dumpMetrics(currentTick);
+        }
+        try {
+            metricsOut.close();
+        } catch (IOException e) {
+            System.err.println("Failed to close the metrics file: " + e.getMessage());
+        }
+        metricsOut = null;
+    }
+
+    private void dumpMetrics(int tick) {
+        try {
+            if (metricsJson) {
+                metrics.writeJson(metricsOut, tick);
+            } else {
+                metrics.writeCsv(metricsOut, tick);
+            }
+            metricsOut.flush();
+        } catch (IOException | UncheckedIOException e) {
+            System.err.println("Failed to write metrics, stopping the dump: " + e.getMessage());
+            metricsOut = null;
+        }
+    }
+
+    // One sample per tick, taken by the tick thread: each farmer's current activity, each
+    // empty field, the enclosure backlog and the buyers who came to each field
+    private void sampleMetrics() {
+        for (int i = 0, n = farmerActivities.size(); i < n; i++) {
+            farmerTicks[Activity.activityOf(farmerActivities.get(i)).ordinal()].increment();
+        }
+        for (int id = 0; id < fieldEmptyTicks.length; id++) {
+            if (fieldEmptyTicks[id] != null && (int) fieldCells.get(id) == 0) {
+                fieldEmptyTicks[id].increment();
+            }
+        }
+        int backlog = 0;
+        for (int type = 0; type < AnimalType.COUNT; type++) {
+            backlog += enclosureCount(enclosureCells.get(type));
+        }
+        enclosureBacklog.record(backlog);
+        for (int id = 0; id < AnimalType.COUNT; id++) {
+            int visits = fieldVisits.get(id);
+            double rate = Double.longBitsToDouble(demandRates.get(id));
+            rate += DEMAND_SMOOTHING * ((visits - lastFieldVisits[id]) - rate);
+            demandRates.set(id, Double.doubleToRawLongBits(rate));
+            lastFieldVisits[id] = visits;
+        }
+    }
+
     // Log the current state to file
     private void logState() {
-        // Use FarmLogger to log the world state inside the external logging file
-        FarmLogger.logWorldState(
-            currentTick, 
-            Collections.unmodifiableMap(enclosureState),
-            Collections.unmodifiableMap(fieldStates),
-            Collections.unmodifiableMap(farmerActivities),
-            Collections.unmodifiableMap(buyerActivities)
-        );
+        if (logStates) {
+            // Use FarmLogger to log the world state inside the external logging file
+            FarmLogger.logWorldState(snapshot());
+        }
     }
 
     // Inner class to represent field state
@@ -152,36 +428,40 @@ public class WorldState {
         }
     }
 
-    public void addWaitingBuyer(String fieldName) {
-        waitingBuyers.compute(fieldName, (k, v) -> (v == null) ? 1 : v + 1); // Using compute instead of put for its atimic nature
+    // Buyers waiting at each field. A buyer enters once when it starts waiting at a field and
+    // leaves once when it buys there or gives up, so the counts are exact.
+    public void buyerEntersWaiting(int fieldId) {
+        waitingBuyers.incrementAndGet(fieldId);
+    }
 
-        updateGUI();
+    public void buyerLeavesWaiting(int fieldId) {
+        waitingBuyers.decrementAndGet(fieldId);
     }
 
-    public void removeWaitingBuyer(String fieldName) {
-        int currentCount = waitingBuyers.getOrDefault(fieldName, 0);
-        if (currentCount > 0) {
-            waitingBuyers.put(fieldName, currentCount - 1);
-        }
+    public int getWaitingBuyers(int fieldId) {
+        return waitingBuyers.get(fieldId);
+    }
 
-        updateGUI();
+    public boolean hasWaitingBuyers(int fieldId) {
+        return waitingBuyers.get(fieldId) > 0;
     }
 
-    public boolean hasWaitingBuyers(String fieldName) {
-        return waitingBuyers.getOrDefault(fieldName, 0) > 0;
+    // Counts a buyer choosing a field, for the field's demand rate
+    public void buyerVisitsField(int fieldId) {
+        fieldVisits.incrementAndGet(fieldId);
     }
 
-    // This method is synchronized to ensure thread safety when multiple threads attempt to update field states concurrently.
-    public synchronized void updateFieldCount(String fieldName, int count) {
-        FieldState currentState = fieldStates.get(fieldName);
-        if (currentState != null) {
-            boolean isStocking = currentState.isBeingStocked();
-            fieldStates.put(fieldName, new FieldState(count, isStocking));
-        } else {
-            fieldStates.put(fieldName, new FieldState(count, false));
+    // The fields as they are now, for a farmer ranking its load (see StockingPolicy). Reads the
+    // published cells, so it takes no field lock; capacity is the same for every field.
+    public StockingPolicy.FieldSnapshot fieldSnapshot(int capacity) {
+        int[] counts = new int[AnimalType.COUNT];
+        int[] waiting = new int[AnimalType.COUNT];
+        double[] demand = new double[AnimalType.COUNT];
+        for (int id = 0; id < AnimalType.COUNT; id++) {
+            counts[id] = (int) fieldCells.get(id);
+            waiting[id] = waitingBuyers.get(id);
+            demand[id] = Double.longBitsToDouble(demandRates.get(id));
         }
-
-        // Ensure GUI updates
-        updateGUI();
+        return new StockingPolicy.FieldSnapshot(counts, waiting, demand, capacity);
     }
 }